@@ -0,0 +1,78 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Settings and errors shared by the benchmarks
+ *
+ */
+final class BenchmarkFixtures {
+	static final String SERVER = "CN=Bench/O=OpenLog";
+	static final String USER = "CN=Bench User/O=OpenLog";
+	static final String DATABASE = "apps/bench.nsf";
+	static final String PAGE = "home.xsp";
+
+	private BenchmarkFixtures() {
+
+	}
+
+	/**
+	 * @return OpenLogConfig with the defaults, but writing on the calling thread and never spooling, so every
+	 *         benchmark measures the same path
+	 */
+	static OpenLogConfig createConfig() {
+		final Map<String, String> properties = new HashMap<String, String>();
+		properties.put("xsp.openlog.async", "false");
+		properties.put("xsp.openlog.spool", "false");
+		properties.put("xsp.openlog.debugLevel", "0");
+		properties.put("Directory", System.getProperty("java.io.tmpdir"));
+		return new OpenLogConfig(properties);
+	}
+
+	/**
+	 * @param depth
+	 *            int stack frames below the benchmark method
+	 * @param message
+	 *            String message of the exception
+	 * @return Throwable with a cause, thrown depth frames down
+	 */
+	static Throwable createError(int depth, String message) {
+		try {
+			recurse(depth, message);
+		} catch (final RuntimeException e) {
+			return e;
+		}
+		throw new IllegalStateException("Not thrown");
+	}
+
+	private static void recurse(int depth, String message) {
+		if (depth > 0) {
+			recurse(depth - 1, message);
+		} else {
+			throw new IllegalStateException(message, new NullPointerException("doc is null"));
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import javax.faces.component.UIComponent;
+import javax.faces.component.UIOutput;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.jscript.InterpretException;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Queuing errors and events in openLogBean during a request. Each operation fills a new OpenLogErrorHolder
+ *        with the number of entries given, so the cost of the duplicate checks as it grows is included
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErrorHolderBenchmark {
+	@Param({ "10", "100" })
+	public int entries;
+
+	@Param({ "100", "10000" })
+	public int expressionLength;
+
+	private InterpretException[] errors;
+	private String[] messages;
+	private UIComponent control;
+
+	@Setup
+	public void setUp() {
+		// otherwise every holder created looks for the settings in applicationScope, and there is none
+		OpenLogConfig.setCurrent(BenchmarkFixtures.createConfig());
+		final StringBuilder expression = new StringBuilder(expressionLength);
+		while (expression.length() < expressionLength) {
+			expression.append("var doc = database.getDocumentByUNID(viewScope.unid); ");
+		}
+		expression.setLength(expressionLength);
+		errors = new InterpretException[entries];
+		messages = new String[entries];
+		for (int i = 0; i < entries; i++) {
+			errors[i] = new InterpretException(new Throwable("Error " + i));
+			errors[i].setExpressionText(expression.toString());
+			messages[i] = "Event " + i;
+		}
+		control = new UIOutput();
+		control.setId("button1");
+	}
+
+	@TearDown
+	public void tearDown() {
+		OpenLogConfig.setCurrent(null);
+	}
+
+	@Benchmark
+	public OpenLogErrorHolder addError() {
+		final OpenLogErrorHolder holder = new OpenLogErrorHolder();
+		for (int i = 0; i < entries; i++) {
+			holder.addError(errors[i], control, 2);
+		}
+		return holder;
+	}
+
+	@Benchmark
+	public OpenLogErrorHolder addEvent() {
+		final OpenLogErrorHolder holder = new OpenLogErrorHolder();
+		for (int i = 0; i < entries; i++) {
+			holder.addEvent(messages[i], control, 4);
+		}
+		return holder;
+	}
+
+}
@@ -0,0 +1,307 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import lotus.domino.Database;
+import lotus.domino.DateTime;
+import lotus.domino.Document;
+import lotus.domino.RichTextItem;
+import lotus.domino.Session;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        In-memory stand-ins for the lotus.domino objects OpenLog uses, so the logging code can be benchmarked on a
+ *        plain JVM. Each interface is implemented with a dynamic Proxy, answering the methods OpenLog calls and
+ *        returning null / 0 / false for everything else, so they keep compiling against any version of Notes.jar.
+ *        Saved documents are counted, not kept, so memory doesn't grow over a benchmark run. Not thread-safe, use one
+ *        Session per benchmark thread.
+ *
+ */
+final class InMemoryDomino {
+	private static final Object[] NO_ARGS = new Object[0];
+	private static final Object NOT_HANDLED = new Object();
+	private static final int LEVEL_MANAGER = 6;
+
+	private InMemoryDomino() {
+
+	}
+
+	/**
+	 * @param server
+	 *            String server name
+	 * @param userName
+	 *            String user name, also the effective user name
+	 * @param currentDbPath
+	 *            String filepath of the current database
+	 * @return Session whose databases all exist, are open and are empty
+	 */
+	static Session createSession(String server, String userName, String currentDbPath) {
+		final SessionStub stub = new SessionStub(server, userName);
+		final Session session = proxy(Session.class, stub);
+		stub.session_ = session;
+		stub.currentDb_ = stub.getDatabase(server, currentDbPath);
+		return session;
+	}
+
+	/**
+	 * @param db
+	 *            Database from {@link #createSession(String, String, String)}
+	 * @return long documents saved in the database
+	 */
+	static long getSaved(Database db) {
+		return ((DatabaseStub) Proxy.getInvocationHandler(db)).saved_;
+	}
+
+	private static <T> T proxy(Class<T> type, Stub stub) {
+		return type.cast(Proxy.newProxyInstance(InMemoryDomino.class.getClassLoader(), new Class<?>[] { type }, stub));
+	}
+
+	/**
+	 * Base of the handlers, answering Object methods and defaulting anything not handled
+	 */
+	private abstract static class Stub implements InvocationHandler {
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			final String name = method.getName();
+			if ("equals".equals(name)) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			} else if ("toString".equals(name)) {
+				return getClass().getSimpleName();
+			}
+			final Object result = handle(name, null == args ? NO_ARGS : args);
+			return NOT_HANDLED == result ? defaultValue(method.getReturnType()) : result;
+		}
+
+		/**
+		 * @param name
+		 *            String method name
+		 * @param args
+		 *            Object[] arguments, never null
+		 * @return Object result, or NOT_HANDLED for the default for the return type
+		 */
+		abstract Object handle(String name, Object[] args);
+
+		private static Object defaultValue(Class<?> type) {
+			if (!type.isPrimitive() || Void.TYPE == type) {
+				return null;
+			} else if (Boolean.TYPE == type) {
+				return Boolean.FALSE;
+			} else if (Long.TYPE == type) {
+				return Long.valueOf(0);
+			} else if (Double.TYPE == type) {
+				return Double.valueOf(0);
+			}
+			return Integer.valueOf(0);
+		}
+	}
+
+	private static class SessionStub extends Stub {
+		private final String server_;
+		private final String userName_;
+		private final Map<String, Database> databases_ = new HashMap<String, Database>();
+		private Session session_;
+		private Database currentDb_;
+
+		SessionStub(String server, String userName) {
+			server_ = server;
+			userName_ = userName;
+		}
+
+		Database getDatabase(String server, String filePath) {
+			final String key = server + "!!" + filePath;
+			Database db = databases_.get(key);
+			if (null == db) {
+				db = proxy(Database.class, new DatabaseStub(session_, server, filePath, databases_.size()));
+				databases_.put(key, db);
+			}
+			return db;
+		}
+
+		@Override
+		Object handle(String name, Object[] args) {
+			if ("getServerName".equals(name)) {
+				return server_;
+			} else if ("getUserName".equals(name) || "getEffectiveUserName".equals(name)) {
+				return userName_;
+			} else if ("getCurrentDatabase".equals(name)) {
+				return currentDb_;
+			} else if ("getDatabase".equals(name)) {
+				return getDatabase((String) args[0], (String) args[1]);
+			} else if ("evaluate".equals(name)) {
+				final Vector<String> roles = new Vector<String>();
+				roles.addElement("[Admin]");
+				roles.addElement("[Editor]");
+				return roles;
+			} else if ("getNotesVersion".equals(name)) {
+				return "Release 9.0.1FP10 HF383 | November 11, 2018";
+			} else if ("createDateTime".equals(name)) {
+				final DateTimeStub dt = new DateTimeStub();
+				dt.set(args[0]);
+				return proxy(DateTime.class, dt);
+			} else if ("getEnvironmentString".equals(name)) {
+				return "";
+			} else if ("isOnServer".equals(name) || "isValid".equals(name)) {
+				return Boolean.TRUE;
+			}
+			return NOT_HANDLED;
+		}
+	}
+
+	private static class DatabaseStub extends Stub {
+		private final Session session_;
+		private final String server_;
+		private final String filePath_;
+		private final String replicaId_;
+		private long saved_;
+		private long unids_;
+
+		DatabaseStub(Session session, String server, String filePath, int index) {
+			session_ = session;
+			server_ = server;
+			filePath_ = filePath;
+			replicaId_ = String.format("80257F2A%08X", index);
+		}
+
+		@Override
+		Object handle(String name, Object[] args) {
+			if ("isOpen".equals(name)) {
+				return Boolean.TRUE;
+			} else if ("getServer".equals(name)) {
+				return server_;
+			} else if ("getFilePath".equals(name)) {
+				return filePath_;
+			} else if ("getReplicaID".equals(name)) {
+				return replicaId_;
+			} else if ("getCurrentAccessLevel".equals(name)) {
+				return LEVEL_MANAGER;
+			} else if ("getParent".equals(name)) {
+				return session_;
+			} else if ("createDocument".equals(name)) {
+				return proxy(Document.class, new DocumentStub(this));
+			}
+			return NOT_HANDLED;
+		}
+
+		String nextUnid() {
+			return String.format("%032X", ++unids_);
+		}
+	}
+
+	private static class DocumentStub extends Stub {
+		private final DatabaseStub db_;
+		private final Map<String, Object> items_ = new LinkedHashMap<String, Object>();
+		private String unid_;
+
+		DocumentStub(DatabaseStub db) {
+			db_ = db;
+		}
+
+		@Override
+		Object handle(String name, Object[] args) {
+			if ("replaceItemValue".equals(name) || "appendItemValue".equals(name)) {
+				items_.put((String) args[0], args[1]);
+			} else if ("createRichTextItem".equals(name)) {
+				final RichTextItem rtitem = proxy(RichTextItem.class, new RichTextItemStub());
+				items_.put((String) args[0], rtitem);
+				return rtitem;
+			} else if ("hasItem".equals(name)) {
+				return items_.containsKey(args[0]);
+			} else if ("getItemValueString".equals(name)) {
+				final Object value = items_.get(args[0]);
+				return value instanceof String ? value : "";
+			} else if ("save".equals(name)) {
+				getUnid();
+				db_.saved_++;
+				return Boolean.TRUE;
+			} else if ("getUniversalID".equals(name)) {
+				return getUnid();
+			} else if ("setUniversalID".equals(name)) {
+				unid_ = (String) args[0];
+			} else if ("getNoteID".equals(name)) {
+				return getUnid().substring(24);
+			}
+			return NOT_HANDLED;
+		}
+
+		private String getUnid() {
+			if (null == unid_) {
+				unid_ = db_.nextUnid();
+			}
+			return unid_;
+		}
+	}
+
+	private static class RichTextItemStub extends Stub {
+		private final StringBuilder text_ = new StringBuilder();
+
+		@Override
+		Object handle(String name, Object[] args) {
+			if ("appendText".equals(name)) {
+				text_.append((String) args[0]);
+			} else if ("addNewLine".equals(name)) {
+				final int lines = args.length == 0 ? 1 : ((Integer) args[0]).intValue();
+				for (int i = 0; i < lines; i++) {
+					text_.append('\n');
+				}
+			} else if ("getUnformattedText".equals(name) || "getText".equals(name)) {
+				return text_.toString();
+			}
+			return NOT_HANDLED;
+		}
+	}
+
+	private static class DateTimeStub extends Stub {
+		private Date date_ = new Date();
+
+		void set(Object value) {
+			if (value instanceof Date) {
+				date_ = (Date) value;
+			} else if (value instanceof Calendar) {
+				date_ = ((Calendar) value).getTime();
+			}
+		}
+
+		@Override
+		Object handle(String name, Object[] args) {
+			if ("setLocalTime".equals(name)) {
+				set(args[0]);
+			} else if ("adjustDay".equals(name)) {
+				date_ = new Date(date_.getTime() + 86400000L * ((Integer) args[0]).intValue());
+			} else if ("toJavaDate".equals(name)) {
+				return date_;
+			}
+			return NOT_HANDLED;
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lotus.domino.NotesException;
+import lotus.domino.Session;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Building a LogRecord for an error, with a new OpenLogItem each time as for each request, and writing it to
+ *        an in-memory log database on the calling thread
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogRecordBenchmark {
+	private static final String ERROR = OpenLogItem.LogType.TYPE_ERROR.getValue();
+
+	private Session session;
+	private Throwable error;
+
+	@Setup
+	public void setUp() {
+		OpenLogConfig.setCurrent(BenchmarkFixtures.createConfig());
+		// registered by the Activator in the plugin
+		LogSinks.register(new NsfLogSink());
+		session = InMemoryDomino.createSession(BenchmarkFixtures.SERVER, BenchmarkFixtures.USER,
+				BenchmarkFixtures.DATABASE);
+		error = BenchmarkFixtures.createError(40, "Benchmark error 1234");
+	}
+
+	@TearDown
+	public void tearDown() {
+		LogSinks.unregister(LogSinks.NSF);
+		OpenLogConfig.setCurrent(null);
+	}
+
+	@Benchmark
+	public LogRecord createLogRecord() throws NotesException {
+		final OpenLogItem item = new OpenLogItem(session, session, BenchmarkFixtures.PAGE);
+		return item.createLogRecord(error, "Benchmark message", Level.SEVERE, ERROR, null);
+	}
+
+	@Benchmark
+	public boolean writeToLog() throws NotesException {
+		final OpenLogItem item = new OpenLogItem(session, session, BenchmarkFixtures.PAGE);
+		final LogRecord record = item.createLogRecord(error, "Benchmark message", Level.SEVERE, ERROR, null);
+		return item.writeToLog(record, null, false);
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import javax.faces.FacesException;
+import javax.faces.el.PropertyNotFoundException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.jscript.InterpretException;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Message assembly for an uncaught exception on the custom error page, as done by
+ *        OpenLogPhaseListener.processUncaughtException, for an SSJS error of varying size
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhaseListenerBenchmark {
+	@Param({ "100", "10000" })
+	public int messageLength;
+
+	private FacesException facesError;
+	private PropertyNotFoundException propertyError;
+
+	@Setup
+	public void setUp() {
+		final StringBuilder message = new StringBuilder(messageLength);
+		while (message.length() < messageLength) {
+			message.append("'doc' is null; ");
+		}
+		message.setLength(messageLength);
+		final InterpretException ie = new InterpretException(new Throwable(message.toString()));
+		ie.setExpressionText(message.toString());
+		facesError = new FacesException(ie);
+		propertyError = new PropertyNotFoundException(message.toString());
+	}
+
+	@Benchmark
+	public OpenLogPhaseListener.UncaughtError describeFacesException() {
+		return OpenLogPhaseListener.describeUncaughtException(facesError);
+	}
+
+	@Benchmark
+	public OpenLogPhaseListener.UncaughtError describePropertyNotFound() {
+		return OpenLogPhaseListener.describeUncaughtException(propertyError);
+	}
+
+}
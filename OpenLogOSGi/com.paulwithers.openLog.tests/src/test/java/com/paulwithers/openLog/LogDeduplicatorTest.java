@@ -0,0 +1,79 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.junit.Test;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Repeats are counted for each log database and only returned for the database asked for.
+ *
+ */
+public class LogDeduplicatorTest {
+
+	@Test
+	public void countsRepeatsForEachDatabase() {
+		final LogRecord first1 = createRecord("db1.nsf");
+		final LogRecord first2 = createRecord("db2.nsf");
+		assertFalse(LogDeduplicator.isDuplicate(first1, 60000));
+		assertFalse(LogDeduplicator.isDuplicate(first2, 60000));
+		LogDeduplicator.saved(first1, "UNID1");
+		LogDeduplicator.saved(first2, "UNID2");
+		assertTrue(LogDeduplicator.isDuplicate(createRecord("db1.nsf"), 60000));
+		assertTrue(LogDeduplicator.isDuplicate(createRecord("db1.nsf"), 60000));
+		assertTrue(LogDeduplicator.isDuplicate(createRecord("db2.nsf"), 60000));
+
+		// within the window and updated less than UPDATE_INTERVAL ago
+		assertTrue(LogDeduplicator.getDue("Test", "db1.nsf").isEmpty());
+
+		final List<LogDeduplicator.Occurrence> due = LogDeduplicator.getDue(true);
+		assertEquals(2, due.size());
+		for (final LogDeduplicator.Occurrence occurrence : due) {
+			if ("db1.nsf".equals(occurrence.getDbPath())) {
+				assertEquals("UNID1", occurrence.getUnid());
+				assertEquals(3, occurrence.getCount());
+			} else {
+				assertEquals("UNID2", occurrence.getUnid());
+				assertEquals(2, occurrence.getCount());
+			}
+			LogDeduplicator.discard(occurrence);
+		}
+		assertTrue(LogDeduplicator.isEmpty());
+	}
+
+	private static LogRecord createRecord(String logDbName) {
+		final LogRecord record = new LogRecord("LogEvent", "Error", Level.SEVERE);
+		record.setFingerprint("0123456789abcdef");
+		record.setEventTime(new Date());
+		record.setFromServer("Test");
+		record.setLogDbName(logDbName);
+		return record;
+	}
+
+}
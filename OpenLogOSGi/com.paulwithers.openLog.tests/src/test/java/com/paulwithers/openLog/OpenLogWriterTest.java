@@ -0,0 +1,316 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        The writer, queue and sinks on a plain JVM, with no Domino or XPages classes on the classpath.
+ *
+ */
+public class OpenLogWriterTest {
+	private static final String TEST = "test";
+
+	@After
+	public void tearDown() {
+		OpenLogWriter.shutdown();
+		LogSinks.unregister(TEST);
+		LogSinks.unregister(LogSinks.FILE);
+		LogSinks.shutdown();
+	}
+
+	@Test
+	public void writesBatchesInOrder() throws Exception {
+		final RecordingSink sink = new RecordingSink(25);
+		final Settings settings = new Settings(TEST);
+		start(settings, sink);
+		final OpenLogWriter writer = OpenLogWriter.getInstance(settings);
+		for (int i = 0; i < 25; i++) {
+			assertTrue(writer.submit(createRecord("Message " + i)));
+		}
+		assertTrue(sink.written_.await(10, TimeUnit.SECONDS));
+		synchronized (sink) {
+			assertEquals(25, sink.messages_.size());
+			for (int i = 0; i < 25; i++) {
+				assertEquals("Message " + i, sink.messages_.get(i));
+			}
+			assertTrue(sink.maxBatch_ <= settings.getAsyncBatchSize());
+		}
+		OpenLogWriter.shutdown();
+		assertTrue(sink.flushes_.get() > 0);
+		assertEquals(1, sink.releases_.get());
+	}
+
+	@Test
+	public void writesQueuedRecordsOnShutdown() {
+		final RecordingSink sink = new RecordingSink(100);
+		final Settings settings = new Settings(TEST);
+		settings.flushInterval_ = 1000;
+		start(settings, sink);
+		final OpenLogWriter writer = OpenLogWriter.getInstance(settings);
+		for (int i = 0; i < 100; i++) {
+			writer.submit(createRecord("Message " + i));
+		}
+		OpenLogWriter.shutdown();
+		assertEquals(100, sink.messages_.size());
+		assertEquals(0, OpenLogWriter.getQueued());
+	}
+
+	@Test
+	public void dropsWhenQueueIsFull() throws Exception {
+		final RecordingSink sink = new RecordingSink(1);
+		sink.block_ = new CountDownLatch(1);
+		final Settings settings = new Settings(TEST);
+		settings.queueSize_ = 2;
+		settings.batchSize_ = 1;
+		start(settings, sink);
+		final OpenLogWriter writer = OpenLogWriter.getInstance(settings);
+		final long dropped = OpenLogStats.getInstance().getDropped();
+		// the first is taken by the writer thread, which blocks in the sink
+		assertTrue(writer.submit(createRecord("Taken")));
+		assertTrue(sink.entered_.await(10, TimeUnit.SECONDS));
+		assertTrue(writer.submit(createRecord("Queued 1")));
+		assertTrue(writer.submit(createRecord("Queued 2")));
+		assertFalse(writer.submit(createRecord("Dropped")));
+		assertEquals(dropped + 1, OpenLogStats.getInstance().getDropped());
+		sink.block_.countDown();
+	}
+
+	@Test
+	public void countsRecordsASinkFailsToWrite() throws Exception {
+		final RecordingSink sink = new RecordingSink(1);
+		sink.fail_ = true;
+		final Settings settings = new Settings(TEST);
+		start(settings, sink);
+		final long dropped = OpenLogStats.getInstance().getDropped();
+		OpenLogWriter.getInstance(settings).submit(createRecord("Fails"));
+		OpenLogWriter.shutdown();
+		assertTrue(sink.entered_.await(0, TimeUnit.SECONDS));
+		assertEquals(dropped + 1, OpenLogStats.getInstance().getDropped());
+	}
+
+	@Test
+	public void fileSinkWritesJsonLines() throws Exception {
+		final File dir = File.createTempFile("openlog", "");
+		assertTrue(dir.delete() && dir.mkdir());
+		try {
+			final Settings settings = new Settings(LogSinks.FILE);
+			settings.fileDirectory_ = dir.getPath();
+			LogSinks.configure(settings);
+			final OpenLogWriter writer = OpenLogWriter.getInstance(settings);
+			for (int i = 0; i < 3; i++) {
+				writer.submit(createRecord("Message \"" + i + "\""));
+			}
+			OpenLogWriter.shutdown();
+			LogSinks.shutdown();
+			final List<String> lines = new ArrayList<String>();
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(dir,
+					"openlog.jsonl")), "UTF-8"));
+			try {
+				String line;
+				while (null != (line = reader.readLine())) {
+					lines.add(line);
+				}
+			} finally {
+				reader.close();
+			}
+			assertEquals(3, lines.size());
+			for (int i = 0; i < 3; i++) {
+				assertTrue(lines.get(i), lines.get(i).startsWith("{\"Form\":\"LogEvent\","));
+				assertTrue(lines.get(i), lines.get(i).contains("\"LogErrorMessage\":\"Message \\\"" + i + "\\\"\""));
+				assertTrue(lines.get(i), lines.get(i).contains("\"LogSeverity\":\"INFO\""));
+			}
+		} finally {
+			LogSinks.unregister(LogSinks.FILE);
+			for (final File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	private static void start(Settings settings, LogSink sink) {
+		LogSinks.register(sink);
+		LogSinks.configure(settings);
+		assertTrue(LogSinks.isActive(sink.getName()));
+	}
+
+	private static LogRecord createRecord(String message) {
+		final LogRecord record = new LogRecord("LogEvent", "Event", Level.INFO);
+		record.setErrorMessage(message);
+		record.setEventTime(new Date());
+		record.setFromServer("Test");
+		record.setFromDatabase("test.nsf");
+		record.setLogDbName("OpenLog.nsf");
+		return record;
+	}
+
+	/**
+	 * Sink recording the messages written to it
+	 */
+	private static class RecordingSink implements LogSink {
+		private final List<String> messages_ = Collections.synchronizedList(new ArrayList<String>());
+		private final CountDownLatch written_;
+		private final CountDownLatch entered_ = new CountDownLatch(1);
+		private final AtomicInteger flushes_ = new AtomicInteger();
+		private final AtomicInteger releases_ = new AtomicInteger();
+		private volatile CountDownLatch block_;
+		private volatile boolean fail_;
+		private int maxBatch_;
+
+		RecordingSink(int expected) {
+			written_ = new CountDownLatch(expected);
+		}
+
+		public String getName() {
+			return TEST;
+		}
+
+		public boolean accepts(LogRecord record) {
+			return true;
+		}
+
+		public int write(List<LogRecord> records) throws Exception {
+			entered_.countDown();
+			if (null != block_) {
+				block_.await(10, TimeUnit.SECONDS);
+			}
+			if (fail_) {
+				throw new IllegalStateException("Sink unavailable");
+			}
+			synchronized (this) {
+				maxBatch_ = Math.max(maxBatch_, records.size());
+				for (final LogRecord record : records) {
+					messages_.add(record.getErrorMessage());
+					written_.countDown();
+				}
+			}
+			return records.size();
+		}
+
+		public void flush() {
+			flushes_.incrementAndGet();
+		}
+
+		public void release() {
+			releases_.incrementAndGet();
+		}
+
+		public void close() {
+			// nothing held
+		}
+	}
+
+	/**
+	 * Defaults as in OpenLogConfig, with short intervals
+	 */
+	private static class Settings implements LogSettings {
+		private final String[] sinks_;
+		private int queueSize_ = 1000;
+		private int batchSize_ = 10;
+		private int flushInterval_ = 50;
+		private String fileDirectory_ = System.getProperty("java.io.tmpdir");
+
+		Settings(String... sinks) {
+			sinks_ = sinks;
+		}
+
+		public int getAsyncQueueSize() {
+			return queueSize_;
+		}
+
+		public int getAsyncThreads() {
+			return 1;
+		}
+
+		public int getAsyncShutdownTimeout() {
+			return 10000;
+		}
+
+		public int getAsyncBatchSize() {
+			return batchSize_;
+		}
+
+		public int getAsyncFlushInterval() {
+			return flushInterval_;
+		}
+
+		public double getSampleRate(Level level) {
+			return 1;
+		}
+
+		public double getEventRateLimit() {
+			return 0;
+		}
+
+		public boolean isEventRateLimitByDatabase() {
+			return false;
+		}
+
+		public String[] getSinks() {
+			return sinks_.clone();
+		}
+
+		public String getFileDirectory() {
+			return fileDirectory_;
+		}
+
+		public String getFileName() {
+			return "openlog";
+		}
+
+		public int getFileMaxSize() {
+			return 10240;
+		}
+
+		public int getFileRollInterval() {
+			return 1440;
+		}
+
+		public int getFileFsyncInterval() {
+			return 0;
+		}
+
+		public boolean isFileGzip() {
+			return false;
+		}
+	}
+
+}
@@ -40,9 +40,25 @@ public class Activator extends Plugin {
 	@Override
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
+		LogDebug.setDiagnostics(OpenLogUtil.DIAGNOSTICS);
+		LogSinks.register(new NsfLogSink());
+		OpenLogStats.register();
 		// version = (String) context.getBundle().getHeaders().get("Bundle-Version");
 	}
 
+	@Override
+	public void stop(BundleContext context) throws Exception {
+		// write anything still queued by the asynchronous writer
+		OpenLogWriter.shutdown();
+		NsfLogSink.shutdown();
+		LogSpool.shutdown();
+		LogEmailDigest.shutdown();
+		LogSinks.shutdown();
+		OpenLogStats.unregister();
+		LogDebug.setDiagnostics(null);
+		super.stop(context);
+	}
+
 	public static Activator getDefault() {
 		return instance;
 	}
@@ -0,0 +1,158 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Fixed-size, lock-free list of unique entries in the order they were added, for {@link OpenLogErrorHolder}.
+ *        Each add claims the next slot with a compare-and-set, so concurrent requests for the same session can add
+ *        entries safely without blocking each other. Once every slot is used, further entries are discarded and
+ *        counted, so memory can't grow however long the entries go unlogged. Entries equal to one already added are
+ *        ignored, as they were by the LinkedHashSets used before.<br>
+ *        <br>
+ *        {@link #close()} stops further adds and returns every entry added, so the owner can swap in a new list and
+ *        log the old one without losing an entry added at the same time.
+ *
+ * @param <E>
+ *            type of entry, which must implement equals and hashCode
+ */
+class BoundedList<E> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final AtomicReferenceArray<E> slots_;
+	private final AtomicInteger used_ = new AtomicInteger();
+	private final AtomicInteger overflow_ = new AtomicInteger();
+	private final ConcurrentHashMap<E, Boolean> added_ = new ConcurrentHashMap<E, Boolean>();
+
+	/**
+	 * @param capacity
+	 *            int maximum number of entries
+	 */
+	BoundedList(int capacity) {
+		slots_ = new AtomicReferenceArray<E>(capacity);
+	}
+
+	/**
+	 * @param entry
+	 *            E to add
+	 * @return boolean true if it was added, false if it was already added or there is no room for it
+	 */
+	boolean add(E entry) {
+		if (isClosed() || null != added_.putIfAbsent(entry, Boolean.TRUE)) {
+			return false;
+		}
+		int slot;
+		do {
+			slot = used_.get();
+			if (slot < 0) {
+				// closed since the check above
+				added_.remove(entry);
+				return false;
+			}
+			if (slot >= slots_.length()) {
+				added_.remove(entry);
+				overflow_.incrementAndGet();
+				return false;
+			}
+		} while (!used_.compareAndSet(slot, slot + 1));
+		slots_.set(slot, entry);
+		return true;
+	}
+
+	/**
+	 * @param entry
+	 *            E to check
+	 * @return boolean true if an equal entry has been added
+	 */
+	boolean contains(E entry) {
+		return added_.containsKey(entry);
+	}
+
+	/**
+	 * @return List of the entries in the order they were added. An entry still being added by another thread may be
+	 *         missing
+	 */
+	List<E> toList() {
+		final int used = Math.min(getUsed(used_.get()), slots_.length());
+		final List<E> entries = new ArrayList<E>(used);
+		for (int i = 0; i < used; i++) {
+			final E entry = slots_.get(i);
+			if (null != entry) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Stops further adds, which return false, see {@link #isClosed()}
+	 * 
+	 * @return List of every entry added, in the order they were added, or an empty List if already closed
+	 */
+	List<E> close() {
+		int used;
+		do {
+			used = used_.get();
+			if (used < 0) {
+				return new ArrayList<E>(0);
+			}
+			// stored negative, so add() sees it is closed
+		} while (!used_.compareAndSet(used, -used - 1));
+		used = Math.min(used, slots_.length());
+		final List<E> entries = new ArrayList<E>(used);
+		for (int i = 0; i < used; i++) {
+			E entry = slots_.get(i);
+			while (null == entry) {
+				// claimed by an add that hasn't stored it yet
+				Thread.yield();
+				entry = slots_.get(i);
+			}
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * @return boolean true if {@link #close()} has been called, so entries must be added to another list
+	 */
+	boolean isClosed() {
+		return used_.get() < 0;
+	}
+
+	private static int getUsed(int used) {
+		return used < 0 ? -used - 1 : used;
+	}
+
+	/**
+	 * @return int number of entries discarded because there was no room
+	 */
+	int getOverflow() {
+		return overflow_.get();
+	}
+
+}
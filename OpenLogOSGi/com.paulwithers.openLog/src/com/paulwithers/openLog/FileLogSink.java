@@ -0,0 +1,474 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        The "file" {@link LogSink}, appending each record as a line of JSON (JSON lines) to a file for a log
+ *        shipper to pick up. The JSON has the same fields as the log document, named after its items, e.g.
+ *        LogFromDatabase, LogSeverity, LogStackTrace. Dates are ISO 8601 in UTC.<br>
+ *        <br>
+ *        Records are encoded into a reusable direct buffer and written through a FileChannel, and the writes are
+ *        only forced to disk in {@link #flush()}, once per batch (group commit). The file is shared by all
+ *        applications on the server, so these xsp.properties / notes.ini settings are read from the first
+ *        application to log:
+ *        <ul>
+ *        <li>xsp.openlog.file.directory - folder for the files, default the same as xsp.openlog.spool.directory</li>
+ *        <li>xsp.openlog.file.name - name of the files, default "openlog". The current file is openlog.jsonl</li>
+ *        <li>xsp.openlog.file.maxSize - KB after which a new file is started, default 10240, 0 for no limit</li>
+ *        <li>xsp.openlog.file.rollInterval - minutes after which a new file is started, default 1440, 0 for no
+ *        limit</li>
+ *        <li>xsp.openlog.file.fsyncInterval - minimum milliseconds between forcing writes to disk. Default 0, after
+ *        every batch, -1 to leave it to the operating system</li>
+ *        <li>xsp.openlog.file.gzip - true to compress files once they are rolled, default false</li>
+ *        </ul>
+ *        When a file is rolled it is renamed with the UTC time it was started, e.g. openlog-20261017-093000.jsonl,
+ *        and compressed to openlog-20261017-093000.jsonl.gz in the background if required.
+ *
+ */
+class FileLogSink implements LogSink {
+	private static final String EXTENSION = ".jsonl";
+	private static final int BUFFER_SIZE = 65536;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final File dir_;
+	private final String name_;
+	private final long maxSize_;
+	private final long rollInterval_;
+	private final long fsyncInterval_;
+	private final boolean gzip_;
+	private final ByteBuffer buffer_ = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final CharsetEncoder encoder_ = Charset.forName("UTF-8").newEncoder().onMalformedInput(
+			CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final StringBuilder line_ = new StringBuilder(1024);
+	private final Calendar calendar_ = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+	private RandomAccessFile raf_;
+	private FileChannel channel_;
+	private long size_;
+	private long openedAt_;
+	private long forcedAt_;
+	private boolean dirty_;
+
+	/**
+	 * @param config
+	 *            LogSettings of the first application to log
+	 */
+	FileLogSink(LogSettings config) {
+		dir_ = new File(config.getFileDirectory());
+		name_ = config.getFileName();
+		maxSize_ = 1024L * config.getFileMaxSize();
+		rollInterval_ = 60000L * config.getFileRollInterval();
+		fsyncInterval_ = config.getFileFsyncInterval();
+		gzip_ = config.isFileGzip();
+	}
+
+	public String getName() {
+		return LogSinks.FILE;
+	}
+
+	public boolean accepts(LogRecord record) {
+		return true;
+	}
+
+	public synchronized int write(List<LogRecord> records) throws IOException {
+		int written = 0;
+		try {
+			for (final LogRecord record : records) {
+				open();
+				line_.setLength(0);
+				append(record);
+				line_.append('\n');
+				encode();
+				written++;
+			}
+			drain();
+		} catch (final IOException e) {
+			// start again with a new channel next time, what is in the buffer is lost
+			closeChannel();
+			throw e;
+		}
+		return written;
+	}
+
+	public synchronized void flush() throws IOException {
+		if (null == channel_) {
+			return;
+		}
+		try {
+			final long now = System.currentTimeMillis();
+			if (dirty_ && fsyncInterval_ >= 0 && now - forcedAt_ >= fsyncInterval_) {
+				channel_.force(false);
+				dirty_ = false;
+				forcedAt_ = now;
+			}
+			// roll when idle too, so the log shipper isn't kept waiting for the next record
+			if (size_ > 0 && rollInterval_ > 0 && now - openedAt_ >= rollInterval_) {
+				roll();
+			}
+		} catch (final IOException e) {
+			closeChannel();
+			throw e;
+		}
+	}
+
+	public void release() {
+		// nothing held per thread
+	}
+
+	public synchronized void close() {
+		try {
+			if (null != channel_) {
+				drain();
+				channel_.force(false);
+			}
+		} catch (final Throwable t) {
+			LogDebug.debugPrint(t);
+		} finally {
+			closeChannel();
+		}
+	}
+
+	/**
+	 * Opens the current file if it is not open, or rolls it if it is full or old enough
+	 */
+	private void open() throws IOException {
+		if (null != channel_) {
+			final long now = System.currentTimeMillis();
+			if ((maxSize_ > 0 && size_ + buffer_.position() >= maxSize_)
+					|| (rollInterval_ > 0 && now - openedAt_ >= rollInterval_)) {
+				roll();
+			} else {
+				return;
+			}
+		}
+		dir_.mkdirs();
+		raf_ = new RandomAccessFile(new File(dir_, name_ + EXTENSION), "rw");
+		channel_ = raf_.getChannel();
+		size_ = channel_.size();
+		channel_.position(size_);
+		openedAt_ = System.currentTimeMillis();
+		buffer_.clear();
+		if (size_ > 0) {
+			// finish a line torn by a crash, so the next record isn't appended to it
+			buffer_.limit(1);
+			final boolean torn = channel_.read(buffer_, size_ - 1) == 1 && '\n' != buffer_.get(0);
+			buffer_.clear();
+			if (torn) {
+				buffer_.put((byte) '\n');
+			}
+		}
+	}
+
+	/**
+	 * Closes the current file, renames it with the time it was started and compresses it if required
+	 */
+	private void roll() throws IOException {
+		drain();
+		if (fsyncInterval_ >= 0) {
+			channel_.force(false);
+		}
+		closeChannel();
+		final SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		final String prefix = name_ + "-" + format.format(new Date(openedAt_));
+		File rolled = new File(dir_, prefix + EXTENSION);
+		for (int i = 1; rolled.exists() || new File(dir_, rolled.getName() + ".gz").exists(); i++) {
+			rolled = new File(dir_, prefix + "-" + i + EXTENSION);
+		}
+		if (!new File(dir_, name_ + EXTENSION).renameTo(rolled)) {
+			// keep appending to the current file rather than lose records
+			LogDebug.print("Could not roll OpenLog file " + name_ + EXTENSION + " to " + rolled.getName());
+			return;
+		}
+		if (gzip_) {
+			new Compressor(rolled).start();
+		}
+	}
+
+	private void closeChannel() {
+		try {
+			if (null != raf_) {
+				raf_.close();
+			}
+		} catch (final Exception e) {
+			// nothing more we can do
+		}
+		raf_ = null;
+		channel_ = null;
+		buffer_.clear();
+		dirty_ = false;
+	}
+
+	/**
+	 * Encodes the line into the buffer, writing the buffer to the channel whenever it fills up
+	 */
+	private void encode() throws IOException {
+		final CharBuffer chars = CharBuffer.wrap(line_);
+		encoder_.reset();
+		CoderResult result = encoder_.encode(chars, buffer_, true);
+		while (result.isOverflow()) {
+			drain();
+			result = encoder_.encode(chars, buffer_, true);
+		}
+		while (encoder_.flush(buffer_).isOverflow()) {
+			drain();
+		}
+	}
+
+	private void drain() throws IOException {
+		if (buffer_.position() == 0) {
+			return;
+		}
+		buffer_.flip();
+		while (buffer_.hasRemaining()) {
+			size_ += channel_.write(buffer_);
+		}
+		buffer_.clear();
+		dirty_ = true;
+	}
+
+	/**
+	 * Appends the record as a JSON object, with the same fields as {@link LogDocumentWriter}
+	 */
+	private void append(LogRecord record) {
+		line_.append('{');
+		string("Form", record.getFormName());
+		if (null != record.getErrorNumber()) {
+			name("LogErrorNumber");
+			line_.append(record.getErrorNumber().intValue());
+		}
+		strings("LogStackTrace", record.getStackTrace());
+		if (null != record.getFromMethod()) {
+			name("LogErrorLine");
+			line_.append(record.getErrorLine());
+			string("LogFromMethod", record.getFromMethod());
+		}
+		string("LogErrorMessage", record.getErrorMessage());
+		date("LogEventTime", record.getEventTime());
+		string("LogEventType", record.getEventType());
+		string("LogMessage", record.getMessage());
+		string("LogSeverity", null == record.getSeverity() ? null : record.getSeverity().getName());
+		string("LogFromDatabase", record.getFromDatabase());
+		string("LogFromServer", record.getFromServer());
+		string("LogFromAgent", record.getFromAgent());
+		string("LogAgentLanguage", "Java");
+		string("LogUserName", record.getUserName());
+		string("LogEffectiveName", record.getEffectiveName());
+		string("LogAccessLevel", record.getAccessLevel());
+		strings("LogUserRoles", record.getUserRoles());
+		strings("LogClientVersion", record.getClientVersion());
+		date("LogAgentStartTime", record.getStartTime());
+		if (!record.getFields().isEmpty()) {
+			name("LogFields");
+			line_.append('{');
+			boolean first = true;
+			for (final Map.Entry<String, String> field : record.getFields().entrySet()) {
+				if (!first) {
+					line_.append(',');
+				}
+				first = false;
+				quote(field.getKey());
+				line_.append(':');
+				quote(field.getValue());
+			}
+			line_.append('}');
+		}
+		if (record.getSampleWeight() != 1) {
+			name("LogSampleWeight");
+			line_.append(record.getSampleWeight());
+		}
+		string("LogFingerprint", record.getFingerprint());
+		if (null != record.getDocUnid()) {
+			// in LogDocInfo of the log document
+			string("LogDocServer", record.getDocServer());
+			string("LogDocDatabase", record.getDocFilePath());
+			string("LogDocUnid", record.getDocUnid());
+			string("LogDocNoteId", record.getDocNoteId());
+		}
+		line_.append('}');
+	}
+
+	private void name(String name) {
+		if (line_.length() > 1) {
+			line_.append(',');
+		}
+		quote(name);
+		line_.append(':');
+	}
+
+	private void string(String name, String value) {
+		if (null != value) {
+			name(name);
+			quote(value);
+		}
+	}
+
+	private void strings(String name, List<String> values) {
+		if (null == values) {
+			return;
+		}
+		name(name);
+		line_.append('[');
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0) {
+				line_.append(',');
+			}
+			quote(values.get(i));
+		}
+		line_.append(']');
+	}
+
+	private void date(String name, Date value) {
+		if (null == value) {
+			return;
+		}
+		name(name);
+		calendar_.setTime(value);
+		line_.append('"');
+		digits(calendar_.get(Calendar.YEAR), 1000);
+		line_.append('-');
+		digits(calendar_.get(Calendar.MONTH) + 1, 10);
+		line_.append('-');
+		digits(calendar_.get(Calendar.DAY_OF_MONTH), 10);
+		line_.append('T');
+		digits(calendar_.get(Calendar.HOUR_OF_DAY), 10);
+		line_.append(':');
+		digits(calendar_.get(Calendar.MINUTE), 10);
+		line_.append(':');
+		digits(calendar_.get(Calendar.SECOND), 10);
+		line_.append('.');
+		digits(calendar_.get(Calendar.MILLISECOND), 100);
+		line_.append("Z\"");
+	}
+
+	/**
+	 * Appends a number zero-padded, without creating a String
+	 */
+	private void digits(int value, int unit) {
+		for (int i = unit; i > 0; i /= 10) {
+			line_.append((char) ('0' + value / i % 10));
+		}
+	}
+
+	private void quote(String value) {
+		if (null == value) {
+			line_.append("null");
+			return;
+		}
+		line_.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				line_.append("\\\"");
+				break;
+			case '\\':
+				line_.append("\\\\");
+				break;
+			case '\n':
+				line_.append("\\n");
+				break;
+			case '\r':
+				line_.append("\\r");
+				break;
+			case '\t':
+				line_.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					line_.append("\\u00").append(HEX[c >> 4 & 0xF]).append(HEX[c & 0xF]);
+				} else {
+					line_.append(c);
+				}
+			}
+		}
+		line_.append('"');
+	}
+
+	/**
+	 * Compresses a rolled file to a .gz file of the same name and deletes it. The .gz file is written under a
+	 * temporary name first, so the log shipper never sees it half-written
+	 */
+	private static class Compressor extends Thread {
+		private final File file_;
+
+		Compressor(File file) {
+			super("OpenLog File Compressor");
+			setDaemon(true);
+			file_ = file;
+		}
+
+		@Override
+		public void run() {
+			final File gz = new File(file_.getPath() + ".gz");
+			final File tmp = new File(file_.getPath() + ".gz.tmp");
+			try {
+				final InputStream in = new FileInputStream(file_);
+				try {
+					final OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp), BUFFER_SIZE);
+					try {
+						final byte[] bytes = new byte[BUFFER_SIZE];
+						int read;
+						while ((read = in.read(bytes)) > 0) {
+							out.write(bytes, 0, read);
+						}
+					} finally {
+						out.close();
+					}
+				} finally {
+					in.close();
+				}
+				if (tmp.renameTo(gz)) {
+					file_.delete();
+				} else {
+					tmp.delete();
+				}
+			} catch (final Throwable t) {
+				LogDebug.print("Could not compress OpenLog file " + file_.getName());
+				LogDebug.debugPrint(t);
+				tmp.delete();
+			}
+		}
+	}
+
+}
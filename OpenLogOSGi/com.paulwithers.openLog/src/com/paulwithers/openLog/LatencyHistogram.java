@@ -0,0 +1,189 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Lock-free histogram of durations, for percentiles. Durations are counted in microsecond buckets: exact up to
+ *        16us, then eight buckets per power of two, so a percentile is accurate to within 12.5%. Recording is a couple
+ *        of atomic increments with no allocation.<br>
+ *        <br>
+ *        Counts are kept in windows of a fixed length. Percentiles are calculated over the current and previous
+ *        windows, so they reflect the last one to two window lengths rather than everything since the server started.
+ *
+ */
+class LatencyHistogram {
+	private static final int LINEAR = 16;
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = LINEAR + (64 - 4) * SUB_BUCKETS;
+
+	private final long window_;
+	private final AtomicLong rotateAt_;
+	private volatile Window current_;
+	private volatile Window previous_;
+
+	/**
+	 * @param window
+	 *            long milliseconds in each window
+	 */
+	LatencyHistogram(long window) {
+		window_ = window;
+		current_ = new Window(System.currentTimeMillis());
+		previous_ = new Window(0);
+		rotateAt_ = new AtomicLong(current_.start_ + window);
+	}
+
+	/**
+	 * @param nanos
+	 *            long duration in nanoseconds
+	 */
+	void record(long nanos) {
+		final long micros = Math.max(0, nanos / 1000);
+		rotate(System.currentTimeMillis());
+		current_.add(micros);
+	}
+
+	/**
+	 * @param percentile
+	 *            double between 0 and 100
+	 * @return double milliseconds that the percentile of durations were within, 0 if none recorded
+	 */
+	double getPercentileMillis(double percentile) {
+		final long now = System.currentTimeMillis();
+		rotate(now);
+		final Window current = current_;
+		final Window previous = isRecent(previous_, now) ? previous_ : null;
+		final long count = current.count_.get() + (null == previous ? 0 : previous.count_.get());
+		if (count == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += current.counts_.get(i) + (null == previous ? 0 : previous.counts_.get(i));
+			if (seen >= rank) {
+				return Math.min(getUpperBound(i), getMaxMicros(current, previous)) / 1000d;
+			}
+		}
+		return getMaxMicros(current, previous) / 1000d;
+	}
+
+	/**
+	 * @return double longest duration in milliseconds in the current and previous windows
+	 */
+	double getMaxMillis() {
+		final long now = System.currentTimeMillis();
+		rotate(now);
+		return getMaxMicros(current_, isRecent(previous_, now) ? previous_ : null) / 1000d;
+	}
+
+	/**
+	 * @return double mean duration in milliseconds in the current and previous windows
+	 */
+	double getMeanMillis() {
+		final long now = System.currentTimeMillis();
+		rotate(now);
+		final Window current = current_;
+		final Window previous = isRecent(previous_, now) ? previous_ : null;
+		final long count = current.count_.get() + (null == previous ? 0 : previous.count_.get());
+		if (count == 0) {
+			return 0;
+		}
+		final long total = current.total_.get() + (null == previous ? 0 : previous.total_.get());
+		return total / 1000d / count;
+	}
+
+	/**
+	 * Discards everything recorded
+	 */
+	void reset() {
+		final long now = System.currentTimeMillis();
+		previous_ = new Window(0);
+		current_ = new Window(now);
+		rotateAt_.set(now + window_);
+	}
+
+	/**
+	 * Starts a new window if the current one has ended. Only the thread that moves rotateAt_ on swaps the windows,
+	 * durations recorded concurrently may land in the window just ended
+	 */
+	private void rotate(long now) {
+		final long rotateAt = rotateAt_.get();
+		if (now >= rotateAt && rotateAt_.compareAndSet(rotateAt, now + window_)) {
+			previous_ = current_;
+			current_ = new Window(now);
+		}
+	}
+
+	private boolean isRecent(Window window, long now) {
+		return now - window.start_ < 2 * window_;
+	}
+
+	private static long getMaxMicros(Window current, Window previous) {
+		return Math.max(current.max_.get(), null == previous ? 0 : previous.max_.get());
+	}
+
+	static int getIndex(long micros) {
+		if (micros < LINEAR) {
+			return (int) micros;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		final int sub = (int) ((micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+		return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+	}
+
+	static long getUpperBound(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		final int exponent = (index - LINEAR) / SUB_BUCKETS + 4;
+		final int sub = (index - LINEAR) % SUB_BUCKETS;
+		final long width = 1L << (exponent - SUB_BITS);
+		return ((SUB_BUCKETS + sub) * width) + width - 1;
+	}
+
+	private static class Window {
+		private final long start_;
+		private final AtomicLongArray counts_ = new AtomicLongArray(BUCKETS);
+		private final AtomicLong count_ = new AtomicLong();
+		private final AtomicLong total_ = new AtomicLong();
+		private final AtomicLong max_ = new AtomicLong();
+
+		Window(long start) {
+			start_ = start;
+		}
+
+		void add(long micros) {
+			counts_.incrementAndGet(getIndex(micros));
+			count_.incrementAndGet();
+			total_.addAndGet(micros);
+			long max = max_.get();
+			while (micros > max && !max_.compareAndSet(max, micros)) {
+				max = max_.get();
+			}
+		}
+	}
+
+}
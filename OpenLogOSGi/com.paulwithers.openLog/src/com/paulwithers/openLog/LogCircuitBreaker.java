@@ -0,0 +1,174 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Circuit breaker for each log database (or mail.box), so an outage doesn't mean every log call retries opening
+ *        the database, tries the signer session and attempts to create it from the template.
+ *        <ul>
+ *        <li>CLOSED - normal, the database is used</li>
+ *        <li>OPEN - xsp.openlog.breaker.failures consecutive failures (default 3). The database isn't tried, entries
+ *        go straight to the {@link LogSpool}, until xsp.openlog.breaker.cooldown seconds have passed (default 60)</li>
+ *        <li>HALF_OPEN - the cool-down has passed and a single log call is trying the database. Success closes the
+ *        breaker, failure opens it for another cool-down</li>
+ *        </ul>
+ *        Breakers are shared by all applications on the server, so the settings are read from the first application
+ *        to log. {@link #getStates()} reports the state of every breaker for monitoring.
+ *
+ */
+public class LogCircuitBreaker {
+	private static final ConcurrentHashMap<String, LogCircuitBreaker> breakers_ = new ConcurrentHashMap<String, LogCircuitBreaker>();
+	private static volatile boolean configured_;
+	private static volatile int threshold_ = 3;
+	private static volatile long cooldown_ = 60000;
+
+	/**
+	 * States of the breaker
+	 */
+	public static enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String target_;
+	private volatile State state_ = State.CLOSED;
+	private volatile int failures_;
+	private long retryAt_;
+
+	private LogCircuitBreaker(String target) {
+		target_ = target;
+	}
+
+	/**
+	 * Reads the breaker settings the first time an application logs
+	 *
+	 * @param config
+	 *            OpenLogConfig of the application logging
+	 */
+	static void configure(OpenLogConfig config) {
+		if (configured_) {
+			return;
+		}
+		threshold_ = config.getBreakerFailures();
+		cooldown_ = 1000L * config.getBreakerCooldown();
+		configured_ = true;
+	}
+
+	/**
+	 * @param target
+	 *            String target database, see {@link NsfLogSink#getTargetKey(LogRecord)}
+	 * @return LogCircuitBreaker for the target database
+	 */
+	static LogCircuitBreaker get(String target) {
+		LogCircuitBreaker breaker = breakers_.get(target);
+		if (null == breaker) {
+			breaker = new LogCircuitBreaker(target);
+			final LogCircuitBreaker existing = breakers_.putIfAbsent(target, breaker);
+			if (null != existing) {
+				breaker = existing;
+			}
+		}
+		return breaker;
+	}
+
+	/**
+	 * @return Map of the state of every breaker, keyed by target database ("server!!filepath")
+	 */
+	public static Map<String, State> getStates() {
+		final Map<String, State> states = new TreeMap<String, State>();
+		for (final LogCircuitBreaker breaker : breakers_.values()) {
+			states.put(breaker.target_, breaker.getState());
+		}
+		return Collections.unmodifiableMap(states);
+	}
+
+	/**
+	 * @return boolean true if the database should be tried, false to skip it while the breaker is open
+	 */
+	boolean allowRequest() {
+		if (State.CLOSED == state_) {
+			return true;
+		}
+		synchronized (this) {
+			final long now = System.currentTimeMillis();
+			if (now < retryAt_) {
+				return false;
+			}
+			// only one caller tries the database, others keep skipping it until it reports back or times out
+			if (State.OPEN == state_) {
+				setState(State.HALF_OPEN);
+			}
+			retryAt_ = now + cooldown_;
+			return true;
+		}
+	}
+
+	/**
+	 * Records that the database was opened and written to
+	 */
+	void recordSuccess() {
+		if (State.CLOSED == state_ && failures_ == 0) {
+			return;
+		}
+		synchronized (this) {
+			failures_ = 0;
+			setState(State.CLOSED);
+		}
+	}
+
+	/**
+	 * Records that the database could not be opened or written to
+	 */
+	synchronized void recordFailure() {
+		failures_++;
+		if (State.HALF_OPEN == state_ || failures_ >= threshold_) {
+			retryAt_ = System.currentTimeMillis() + cooldown_;
+			setState(State.OPEN);
+		}
+	}
+
+	private void setState(State state) {
+		if (state_ != state) {
+			state_ = state;
+			OpenLogUtil.print("Circuit breaker for OpenLog database " + target_ + " is now " + state);
+		}
+	}
+
+	/**
+	 * @return State current state
+	 */
+	public State getState() {
+		return state_;
+	}
+
+	/**
+	 * @return int consecutive failures
+	 */
+	public synchronized int getFailures() {
+		return failures_;
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Diagnostics for the Domino-free core. Until the {@link Activator} installs the plugin's
+ *        {@link LogDiagnostics}, messages go to System.out and errors to System.err with their stack trace, as
+ *        OpenLogUtil does outside a request.
+ *
+ */
+final class LogDebug {
+	private static final LogDiagnostics CONSOLE = new LogDiagnostics() {
+
+		public void print(String msg) {
+			System.out.println("XOL: " + msg);
+		}
+
+		public void debugPrint(Throwable t) {
+			if (null == t) {
+				return;
+			}
+			OpenLogStats.debugError();
+			System.err.println("XOL_DEBUG error: " + t);
+			System.err.println("XOL_DEBUG error trace: ");
+			t.printStackTrace();
+		}
+
+	};
+	private static volatile LogDiagnostics diagnostics_ = CONSOLE;
+
+	private LogDebug() {
+
+	}
+
+	/**
+	 * @param diagnostics
+	 *            LogDiagnostics to use, or null for System.out / System.err
+	 */
+	static void setDiagnostics(LogDiagnostics diagnostics) {
+		diagnostics_ = null == diagnostics ? CONSOLE : diagnostics;
+	}
+
+	/**
+	 * @param msg
+	 *            String message to print
+	 */
+	static void print(String msg) {
+		diagnostics_.print(msg);
+	}
+
+	/**
+	 * @param t
+	 *            Throwable caught inside OpenLog
+	 */
+	static void debugPrint(Throwable t) {
+		try {
+			diagnostics_.debugPrint(t);
+		} catch (final Throwable e) {
+			// nowhere left to report it
+		}
+	}
+
+}
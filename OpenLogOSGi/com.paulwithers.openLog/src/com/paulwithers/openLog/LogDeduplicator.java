@@ -0,0 +1,445 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Collapses repeats of the same error / event into the first log document. Enabled by setting
+ *        xsp.openlog.dedupWindow to a number of seconds.<br>
+ *        <br>
+ *        Each record gets a fingerprint from the exception class, the top stack frames, the page and the message with
+ *        numbers and ids masked out. The first record for a fingerprint is written as normal, with LogFingerprint,
+ *        LogOccurrences, LogFirstSeen and LogLastSeen items. Repeats within the window after that are only counted in
+ *        memory, and the first document's LogOccurrences and LogLastSeen are updated at most every
+ *        {@link #UPDATE_INTERVAL} milliseconds and when the window closes, by the writer threads or, when logging
+ *        synchronously, by a background thread of the "nsf" sink. Occurrences are kept for each log database, so a
+ *        write only looks at those for its own database, and the same error logged to two databases is counted in
+ *        each.<br>
+ *        <br>
+ *        If the first record is not written, because it is spooled, dropped or fails to save, {@link #unsaved(LogRecord)}
+ *        discards its occurrence, so the next repeat is written as a new first record rather than counted against a
+ *        document that doesn't exist.
+ *
+ */
+class LogDeduplicator {
+	static final long UPDATE_INTERVAL = 10000;
+	private static final int FINGERPRINT_FRAMES = 5;
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static final Pattern VARIABLE_PARTS = Pattern.compile("[0-9A-Fa-f]{8,}|\\d+");
+
+	// occurrences for each log database, so a write only looks at those for its own database
+	private static final ConcurrentHashMap<String, Target> targets_ = new ConcurrentHashMap<String, Target>();
+
+	private LogDeduplicator() {
+
+	}
+
+	/**
+	 * Computes a stable fingerprint for an error / event
+	 *
+	 * @param ee
+	 *            Throwable logged or null
+	 * @param page
+	 *            String page logged from
+	 * @param message
+	 *            String message logged
+	 * @return String 16 character hex fingerprint
+	 */
+	static String fingerprint(Throwable ee, String page, String message) {
+		long hash = FNV_OFFSET;
+		if (null != ee) {
+			hash = hash(hash, ee.getClass().getName());
+			final StackTraceElement[] stack = ee.getStackTrace();
+			for (int i = 0; i < stack.length && i < FINGERPRINT_FRAMES; i++) {
+				hash = hash(hash, stack[i].getClassName());
+				hash = hash(hash, stack[i].getMethodName());
+				hash = hash(hash, Integer.toString(stack[i].getLineNumber()));
+			}
+		}
+		hash = hash(hash, page);
+		if (null != message) {
+			hash = hash(hash, VARIABLE_PARTS.matcher(message).replaceAll("#"));
+		}
+		final String hex = Long.toHexString(hash);
+		return "0000000000000000".substring(hex.length()) + hex;
+	}
+
+	/**
+	 * Computes a fingerprint from a record, for when the Throwable is no longer available. Uses the top frames of
+	 * the stack trace logged rather than the exception class, so is not the same as
+	 * {@link #fingerprint(Throwable, String, String)} for the same error.
+	 *
+	 * @param record
+	 *            LogRecord to fingerprint
+	 * @return String 16 character hex fingerprint
+	 */
+	static String fingerprint(LogRecord record) {
+		if (null != record.getFingerprint()) {
+			return record.getFingerprint();
+		}
+		long hash = FNV_OFFSET;
+		if (null != record.getStackTrace()) {
+			int frames = 0;
+			for (final String line : record.getStackTrace()) {
+				if (line.startsWith("at ")) {
+					hash = hash(hash, line);
+					if (++frames == FINGERPRINT_FRAMES) {
+						break;
+					}
+				}
+			}
+		}
+		hash = hash(hash, record.getEventType());
+		hash = hash(hash, record.getFromAgent());
+		if (null != record.getErrorMessage()) {
+			hash = hash(hash, VARIABLE_PARTS.matcher(record.getErrorMessage()).replaceAll("#"));
+		}
+		final String hex = Long.toHexString(hash);
+		return "0000000000000000".substring(hex.length()) + hex;
+	}
+
+	/**
+	 * FNV-1a hash of a String, continuing from the hash passed
+	 *
+	 * @param hash
+	 *            long hash so far
+	 * @param value
+	 *            String to add to the hash
+	 * @return long new hash
+	 */
+	private static long hash(long hash, String value) {
+		if (null != value) {
+			for (int i = 0; i < value.length(); i++) {
+				hash ^= value.charAt(i);
+				hash *= FNV_PRIME;
+			}
+		}
+		// separator, so "ab"+"c" and "a"+"bc" differ
+		hash ^= 0xff;
+		hash *= FNV_PRIME;
+		return hash;
+	}
+
+	/**
+	 * Checks whether a record repeats one already logged within the window. If so, it is counted against the first
+	 * record. Otherwise the record becomes the first occurrence for its fingerprint.
+	 *
+	 * @param record
+	 *            LogRecord to check
+	 * @param windowMillis
+	 *            long milliseconds repeats are collapsed for
+	 * @return boolean true if the record is a duplicate and should not be written
+	 */
+	static boolean isDuplicate(LogRecord record, long windowMillis) {
+		final String fingerprint = record.getFingerprint();
+		if (null == fingerprint || windowMillis <= 0) {
+			return false;
+		}
+		final long now = record.getEventTime().getTime();
+		final Target target = getTarget(record.getFromServer(), record.getLogDbName(), true);
+		final ConcurrentHashMap<String, Occurrence> occurrences = target.occurrences_;
+		while (true) {
+			final Occurrence existing = occurrences.get(fingerprint);
+			if (null != existing && existing.isOpen(now)) {
+				existing.repeat(now);
+				return true;
+			}
+			final Occurrence fresh = new Occurrence(record, windowMillis);
+			if (null == existing) {
+				if (null == occurrences.putIfAbsent(fingerprint, fresh)) {
+					return false;
+				}
+			} else if (occurrences.replace(fingerprint, existing, fresh)) {
+				target.retired_.add(existing);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * @param server
+	 *            String server of the log database
+	 * @param dbPath
+	 *            String filepath of the log database
+	 * @param create
+	 *            boolean whether to create the Target if there isn't one
+	 * @return Target for the log database, or null
+	 */
+	private static Target getTarget(String server, String dbPath, boolean create) {
+		final String key = server + "!!" + dbPath;
+		Target target = targets_.get(key);
+		if (null == target && create) {
+			target = new Target();
+			final Target existing = targets_.putIfAbsent(key, target);
+			if (null != existing) {
+				target = existing;
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * Records the UNID of the document written for the first occurrence, so repeats can be counted against it
+	 *
+	 * @param record
+	 *            LogRecord written
+	 * @param unid
+	 *            String UNID of the log document
+	 */
+	static void saved(LogRecord record, String unid) {
+		final Occurrence occurrence = getFirst(record);
+		if (null != occurrence) {
+			occurrence.unid_ = unid;
+		}
+	}
+
+	/**
+	 * Discards the occurrence a record is the first of, if its document has not been written, because the record
+	 * has been spooled, dropped or could not be saved. Repeats counted against it so far are lost, later ones are
+	 * written as a new first record
+	 *
+	 * @param record
+	 *            LogRecord not written
+	 */
+	static void unsaved(LogRecord record) {
+		final Occurrence occurrence = getFirst(record);
+		if (null != occurrence && null == occurrence.unid_) {
+			discard(occurrence);
+		}
+	}
+
+	/**
+	 * Matched on fingerprint and event time rather than the record itself, so a record read back from the
+	 * {@link LogSpool} still matches
+	 *
+	 * @param record
+	 *            LogRecord
+	 * @return Occurrence the record is the first of, or null
+	 */
+	private static Occurrence getFirst(LogRecord record) {
+		if (null == record.getFingerprint() || null == record.getEventTime()) {
+			return null;
+		}
+		final Target target = getTarget(record.getFromServer(), record.getLogDbName(), false);
+		if (null == target) {
+			return null;
+		}
+		final Occurrence occurrence = target.occurrences_.get(record.getFingerprint());
+		if (null != occurrence && occurrence.firstSeen_ == record.getEventTime().getTime()) {
+			return occurrence;
+		}
+		return null;
+	}
+
+	/**
+	 * Stops counting repeats for a record whose document could not be written or updated
+	 *
+	 * @param occurrence
+	 *            Occurrence to discard
+	 */
+	static void discard(Occurrence occurrence) {
+		final Target target = getTarget(occurrence.server_, occurrence.dbPath_, false);
+		if (null != target) {
+			target.occurrences_.remove(occurrence.fingerprint_, occurrence);
+			target.retired_.remove(occurrence);
+		}
+	}
+
+	/**
+	 * @return boolean true if no repeats are being counted, so there's nothing for {@link #getDue(boolean)} to return
+	 *         now or later
+	 */
+	static boolean isEmpty() {
+		for (final Target target : targets_.values()) {
+			if (!target.occurrences_.isEmpty() || !target.retired_.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the occurrences whose log document needs updating, tidying up any that are finished
+	 *
+	 * @param force
+	 *            boolean true to include every occurrence with uncounted repeats, e.g. on shutdown
+	 * @return List of occurrences to update
+	 */
+	static List<Occurrence> getDue(boolean force) {
+		final long now = System.currentTimeMillis();
+		final List<Occurrence> due = new ArrayList<Occurrence>();
+		for (final Target target : targets_.values()) {
+			target.getDue(now, force, due);
+		}
+		return due;
+	}
+
+	/**
+	 * Gets the occurrences for a single log database whose log document needs updating
+	 *
+	 * @param server
+	 *            String server of the log database
+	 * @param dbPath
+	 *            String filepath of the log database
+	 * @return List of occurrences to update
+	 */
+	static List<Occurrence> getDue(String server, String dbPath) {
+		final List<Occurrence> due = new ArrayList<Occurrence>();
+		final Target target = getTarget(server, dbPath, false);
+		if (null != target) {
+			target.getDue(System.currentTimeMillis(), false, due);
+		}
+		return due;
+	}
+
+	/**
+	 * Occurrences logged to one log database
+	 */
+	private static class Target {
+		private final ConcurrentHashMap<String, Occurrence> occurrences_ = new ConcurrentHashMap<String, Occurrence>();
+		// occurrences whose window has closed but still need their final count writing
+		private final ConcurrentLinkedQueue<Occurrence> retired_ = new ConcurrentLinkedQueue<Occurrence>();
+
+		/**
+		 * Adds the occurrences whose log document needs updating, tidying up any that are finished
+		 */
+		private void getDue(long now, boolean force, List<Occurrence> due) {
+			for (final Occurrence occurrence : occurrences_.values()) {
+				if (occurrence.isDue(now, force)) {
+					due.add(occurrence);
+				} else if (!occurrence.isOpen(now) && !occurrence.isPending()) {
+					occurrences_.remove(occurrence.fingerprint_, occurrence);
+				}
+			}
+			for (final Iterator<Occurrence> it = retired_.iterator(); it.hasNext();) {
+				final Occurrence occurrence = it.next();
+				if (occurrence.isPending() && null != occurrence.unid_) {
+					due.add(occurrence);
+				} else if (!occurrence.isPending() || now - occurrence.lastSeen_ > occurrence.window_) {
+					// finished, or the first document was never written
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Repeats of the first record logged for a fingerprint
+	 */
+	static class Occurrence {
+		private final String fingerprint_;
+		private final String server_;
+		private final String dbPath_;
+		private final long firstSeen_;
+		private final long window_;
+		private final AtomicInteger count_ = new AtomicInteger(1);
+		private volatile long lastSeen_;
+		private volatile String unid_;
+		private volatile int updatedCount_ = 1;
+		private volatile long lastUpdate_;
+
+		Occurrence(LogRecord first, long window) {
+			fingerprint_ = first.getFingerprint();
+			server_ = first.getFromServer();
+			dbPath_ = first.getLogDbName();
+			firstSeen_ = first.getEventTime().getTime();
+			lastSeen_ = firstSeen_;
+			lastUpdate_ = firstSeen_;
+			window_ = window;
+		}
+
+		private boolean isOpen(long now) {
+			return now - firstSeen_ <= window_;
+		}
+
+		private void repeat(long now) {
+			count_.incrementAndGet();
+			if (now > lastSeen_) {
+				lastSeen_ = now;
+			}
+		}
+
+		private boolean isPending() {
+			return count_.get() > updatedCount_;
+		}
+
+		private boolean isDue(long now, boolean force) {
+			if (null == unid_ || !isPending()) {
+				return false;
+			}
+			return force || !isOpen(now) || now - lastUpdate_ >= UPDATE_INTERVAL;
+		}
+
+		/**
+		 * @return String server of the log database
+		 */
+		String getServer() {
+			return server_;
+		}
+
+		/**
+		 * @return String filepath of the log database
+		 */
+		String getDbPath() {
+			return dbPath_;
+		}
+
+		/**
+		 * @return String UNID of the first log document
+		 */
+		String getUnid() {
+			return unid_;
+		}
+
+		/**
+		 * @return int occurrences so far, including the first
+		 */
+		int getCount() {
+			return count_.get();
+		}
+
+		/**
+		 * @return long time of the latest occurrence
+		 */
+		long getLastSeen() {
+			return lastSeen_;
+		}
+
+		/**
+		 * @param count
+		 *            int occurrences written to the log document
+		 */
+		void updated(int count) {
+			updatedCount_ = count;
+			lastUpdate_ = System.currentTimeMillis();
+		}
+	}
+
+}
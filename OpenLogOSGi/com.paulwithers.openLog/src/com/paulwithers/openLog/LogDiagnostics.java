@@ -0,0 +1,44 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Where the Domino-free core reports problems with OpenLog itself, through {@link LogDebug}. The plugin
+ *        installs one using {@link OpenLogUtil#print(String)} and {@link OpenLogUtil#debugPrint(Throwable)}, so
+ *        xsp.openlog.debugLevel still applies.
+ *
+ */
+interface LogDiagnostics {
+
+	/**
+	 * @param msg
+	 *            String message to print
+	 */
+	void print(String msg);
+
+	/**
+	 * @param t
+	 *            Throwable caught inside OpenLog
+	 */
+	void debugPrint(Throwable t);
+
+}
@@ -0,0 +1,337 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import com.ibm.commons.util.StringUtil;
+
+import lotus.domino.Database;
+import lotus.domino.DateTime;
+import lotus.domino.Document;
+import lotus.domino.NotesException;
+import lotus.domino.RichTextItem;
+import lotus.domino.Session;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Creates OpenLog documents for {@link LogRecord}s in a single log database. Used both on the request thread
+ *        and by the {@link OpenLogWriter} threads, so it only uses the Session of the Database passed in. When
+ *        writing a batch, the DateTime objects and any databases opened for document links are reused for every
+ *        record, call {@link #recycle()} when the batch is finished.
+ *
+ */
+class LogDocumentWriter {
+	private final Database db_;
+	private final Map<String, Database> docDbs_ = new HashMap<String, Database>();
+	private DateTime eventTime_;
+	private DateTime startTime_;
+
+	/**
+	 * @param db
+	 *            Database to create the log documents in, OpenLog database or mail.box. It will not be recycled
+	 */
+	LogDocumentWriter(Database db) {
+		db_ = db;
+	}
+
+	/**
+	 * Creates and saves a log document
+	 *
+	 * @param record
+	 *            LogRecord to write
+	 * @param errDoc
+	 *            Document the record relates to or null. If null but the record has a document UNID, the document
+	 *            will be retrieved from the Session of the log database
+	 * @return boolean whether the document was saved
+	 */
+	boolean write(LogRecord record, Document errDoc) {
+		boolean retval = false;
+		Document logDoc = null;
+		RichTextItem rtitem = null;
+		boolean recycleErrDoc = false;
+
+		try {
+			final Session session = db_.getParent();
+			logDoc = db_.createDocument();
+			rtitem = logDoc.createRichTextItem("LogDocInfo");
+
+			logDoc.appendItemValue("Form", record.getFormName());
+
+			if (null == eventTime_) {
+				eventTime_ = session.createDateTime(record.getEventTime());
+				startTime_ = session.createDateTime(record.getStartTime());
+			} else {
+				eventTime_.setLocalTime(record.getEventTime());
+				startTime_.setLocalTime(record.getStartTime());
+			}
+
+			if (null != record.getErrorNumber()) {
+				logDoc.replaceItemValue("LogErrorNumber", record.getErrorNumber());
+			}
+			if (null != record.getStackTrace()) {
+				final String stackHash = record.getStackHash();
+				if (null != stackHash && LogStackStore.store(db_, stackHash, record.getStackTrace(), eventTime_)) {
+					logDoc.replaceItemValue("LogStackTrace", LogStackStore.summarise(record.getStackTrace()));
+					logDoc.replaceItemValue("LogStackHash", stackHash);
+					logDoc.replaceItemValue("LogStackLink", LogStackStore.getLink(db_, stackHash));
+				} else if (LogPayload.isOversized(record.getStackTrace())) {
+					LogPayload.attach(rtitem, record.getStackTrace());
+					rtitem.addNewLine(1);
+					logDoc.replaceItemValue("LogStackTrace", LogPayload.summarise(record.getStackTrace()));
+				} else {
+					// not stored separately, or the LogStack document couldn't be saved
+					logDoc.replaceItemValue("LogStackTrace", toVector(record.getStackTrace()));
+				}
+			}
+			if (null != record.getFromMethod()) {
+				logDoc.replaceItemValue("LogErrorLine", record.getErrorLine());
+				logDoc.replaceItemValue("LogFromMethod", record.getFromMethod());
+			}
+
+			logDoc.replaceItemValue("LogErrorMessage", record.getErrorMessage());
+			logDoc.replaceItemValue("LogEventTime", eventTime_);
+			logDoc.replaceItemValue("LogEventType", record.getEventType());
+			// If greater than 32k, put in logDocInfo
+			final String message = record.getMessage();
+			if (LogPayload.isOversized(message)) {
+				LogPayload.attach(rtitem, message);
+				rtitem.addNewLine(1);
+				logDoc.replaceItemValue("LogMessage", LogPayload.summarise(message));
+			} else if (message.length() > 32000) {
+				rtitem.appendText(message);
+				rtitem.addNewLine();
+				logDoc.replaceItemValue("LogMessage", message.substring(0, 100) + "...");
+			} else {
+				logDoc.replaceItemValue("LogMessage", message);
+			}
+			logDoc.replaceItemValue("LogSeverity", record.getSeverity().getName());
+			logDoc.replaceItemValue("LogFromDatabase", record.getFromDatabase());
+			logDoc.replaceItemValue("LogFromServer", record.getFromServer());
+			logDoc.replaceItemValue("LogFromAgent", record.getFromAgent());
+			logDoc.replaceItemValue("LogAgentLanguage", "Java");
+			logDoc.replaceItemValue("LogUserName", record.getUserName());
+			logDoc.replaceItemValue("LogEffectiveName", record.getEffectiveName());
+			logDoc.replaceItemValue("LogAccessLevel", record.getAccessLevel());
+			logDoc.replaceItemValue("LogUserRoles", toVector(record.getUserRoles()));
+			logDoc.replaceItemValue("LogClientVersion", toVector(record.getClientVersion()));
+			logDoc.replaceItemValue("LogAgentStartTime", startTime_);
+
+			if (!record.getFields().isEmpty()) {
+				final Vector<String> fields = new Vector<String>(record.getFields().size());
+				for (final Map.Entry<String, String> field : record.getFields().entrySet()) {
+					fields.addElement(field.getKey() + "=" + field.getValue());
+				}
+				logDoc.replaceItemValue("LogFields", fields);
+			}
+			if (record.getSampleWeight() != 1) {
+				logDoc.replaceItemValue("LogSampleWeight", record.getSampleWeight());
+			}
+			if (null != record.getFingerprint()) {
+				logDoc.replaceItemValue("LogFingerprint", record.getFingerprint());
+				logDoc.replaceItemValue("LogOccurrences", 1);
+				logDoc.replaceItemValue("LogFirstSeen", eventTime_);
+				logDoc.replaceItemValue("LogLastSeen", eventTime_);
+			}
+
+			if (null != record.getDocUnid()) {
+				if (null == errDoc) {
+					// Writing from a background thread, so get the document again with this Session
+					try {
+						final Database docDb = getDocDb(session, record.getDocServer(), record.getDocFilePath());
+						if (null != docDb) {
+							errDoc = docDb.getDocumentByUNID(record.getDocUnid());
+							recycleErrDoc = true;
+						}
+					} catch (final Exception e) {
+						OpenLogUtil.debugPrint(e);
+					}
+				}
+				rtitem.appendText("The document associated with this event is:");
+				rtitem.addNewLine(1);
+				rtitem.appendText("Server: " + record.getDocServer());
+				rtitem.addNewLine(1);
+				rtitem.appendText("Database: " + record.getDocFilePath());
+				rtitem.addNewLine(1);
+				rtitem.appendText("UNID: " + record.getDocUnid());
+				rtitem.addNewLine(1);
+				if (null != record.getDocNoteId()) {
+					rtitem.appendText("Note ID: " + record.getDocNoteId());
+					rtitem.addNewLine(1);
+				}
+				if (null != errDoc) {
+					rtitem.appendText("DocLink: ");
+					rtitem.appendDocLink(errDoc, record.getDocUnid());
+				}
+			}
+
+			// make sure Depositor-level users can add documents too
+			logDoc.appendItemValue("$PublicAccess", "1");
+
+			if (StringUtil.isNotEmpty(record.getLogEmail())) {
+				logDoc.replaceItemValue("Recipients", record.getLogEmail());
+				logDoc.replaceItemValue("SendTo", record.getLogEmail());
+				logDoc.replaceItemValue("From", record.getUserName());
+				logDoc.replaceItemValue("Principal", record.getUserName());
+			}
+
+			// Set expiry date, if defined
+			if (!StringUtil.isEmpty(record.getLogExpireDate())) {
+				try {
+					final Integer expiryPeriod = new Integer(record.getLogExpireDate());
+					startTime_.adjustDay(expiryPeriod);
+					logDoc.replaceItemValue("ExpireDate", startTime_);
+				} catch (final Throwable t) {
+					logDoc.replaceItemValue("ArchiveFlag",
+							"WARNING: Xsp Properties in the application has a non-numeric value for xsp.openlog.expireDate, so cannot be set to auto-expire");
+				}
+			}
+			logDoc.save(true);
+			LogDeduplicator.saved(record, logDoc.getUniversalID());
+			retval = true;
+		} catch (final Throwable t) {
+			OpenLogUtil.debugPrint(t);
+			LogDeduplicator.unsaved(record);
+			retval = false;
+		} finally {
+			// recycle all the logDoc objects when we're done with them
+			try {
+				if (recycleErrDoc && null != errDoc) {
+					errDoc.recycle();
+				}
+				if (rtitem != null) {
+					rtitem.recycle();
+				}
+				if (logDoc != null) {
+					logDoc.recycle();
+				}
+			} catch (final Exception e2) {
+				// NTF why the hell does .recycle() throw an Exception?
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Updates the occurrence count and last seen time on the first log document for a fingerprint
+	 *
+	 * @param occurrence
+	 *            Occurrence to write, whose document is in this writer's database
+	 * @return boolean whether the document was saved
+	 */
+	boolean update(LogDeduplicator.Occurrence occurrence) {
+		boolean retval = false;
+		Document logDoc = null;
+		DateTime lastSeen = null;
+		try {
+			final int count = occurrence.getCount();
+			logDoc = db_.getDocumentByUNID(occurrence.getUnid());
+			lastSeen = db_.getParent().createDateTime(new Date(occurrence.getLastSeen()));
+			logDoc.replaceItemValue("LogOccurrences", count);
+			logDoc.replaceItemValue("LogLastSeen", lastSeen);
+			logDoc.save(true);
+			occurrence.updated(count);
+			retval = true;
+		} catch (final Throwable t) {
+			// document deleted or database unavailable, so stop counting
+			OpenLogUtil.debugPrint(t);
+			LogDeduplicator.discard(occurrence);
+		} finally {
+			try {
+				if (null != lastSeen) {
+					lastSeen.recycle();
+				}
+				if (null != logDoc) {
+					logDoc.recycle();
+				}
+			} catch (final Exception e) {
+				// see above
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Gets a database holding documents linked to, opening it only once per batch
+	 *
+	 * @param session
+	 *            Session of the log database
+	 * @param server
+	 *            String server of the database
+	 * @param filePath
+	 *            String filepath of the database
+	 * @return Database or null if it cannot be opened
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 */
+	private Database getDocDb(Session session, String server, String filePath) throws NotesException {
+		final String key = server + "!!" + filePath;
+		if (docDbs_.containsKey(key)) {
+			return docDbs_.get(key);
+		}
+		final Database docDb = session.getDatabase(server, filePath, false);
+		docDbs_.put(key, docDb);
+		return docDb;
+	}
+
+	/**
+	 * @param values
+	 *            List of Strings from the record or null
+	 * @return Vector to write as a multi-value item, or null
+	 */
+	static Vector<String> toVector(List<String> values) {
+		return null == values ? null : new Vector<String>(values);
+	}
+
+	/**
+	 * Recycles the Domino objects created while writing. The log database is left for the caller to recycle
+	 */
+	void recycle() {
+		try {
+			if (null != startTime_) {
+				startTime_.recycle();
+			}
+			if (null != eventTime_) {
+				eventTime_.recycle();
+			}
+		} catch (final Exception e) {
+			// see above
+		}
+		startTime_ = null;
+		eventTime_ = null;
+		for (final Database docDb : docDbs_.values()) {
+			try {
+				// The same database may have been returned as the log database, that's left for the caller
+				if (null != docDb && docDb != db_) {
+					docDb.recycle();
+				}
+			} catch (final Exception e) {
+				// see above
+			}
+		}
+		docDbs_.clear();
+	}
+
+}
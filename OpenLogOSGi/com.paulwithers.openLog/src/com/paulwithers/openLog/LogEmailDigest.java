@@ -0,0 +1,480 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.commons.util.StringUtil;
+
+import lotus.domino.Database;
+import lotus.domino.DateTime;
+import lotus.domino.Document;
+import lotus.domino.NotesException;
+import lotus.domino.NotesFactory;
+import lotus.domino.NotesThread;
+import lotus.domino.RichTextItem;
+import lotus.domino.Session;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Digest mode for xsp.openlog.email. Instead of a document in mail.box for every entry, entries are buffered
+ *        for each server and recipient and one summary memo is sent every xsp.openlog.email.digest seconds. Entries
+ *        are grouped by fingerprint, see {@link LogDeduplicator#fingerprint(LogRecord)}, with a count, first and last
+ *        seen times and the stack trace of the first entry. The digest is shared by all applications on the server,
+ *        so these settings are read from the first application to log, and apply to every application until the
+ *        server or the plugin is restarted. Set them in notes.ini, or the same in every application's xsp.properties.
+ *        An application that sends emails with different settings gets a warning on the console, once:
+ *        <ul>
+ *        <li>xsp.openlog.email.digest - seconds between digests, default 0 to send every entry as before</li>
+ *        <li>xsp.openlog.email.digestMaxGroups - distinct entries listed in a digest, default 50. Further entries are
+ *        only counted</li>
+ *        <li>xsp.openlog.email.digestMaxStacks - stack traces included in a digest, default 3</li>
+ *        <li>xsp.openlog.email.digestMaxSize - maximum size of the digest body in KB, default 60</li>
+ *        </ul>
+ *
+ */
+class LogEmailDigest {
+	private static final int MAX_MESSAGE = 500;
+	private static final ConcurrentHashMap<String, Digest> digests_ = new ConcurrentHashMap<String, Digest>();
+	private static volatile boolean configured_;
+	private static volatile int interval_;
+	private static volatile int maxGroups_ = 50;
+	private static volatile int maxStacks_ = 3;
+	private static volatile int maxSize_ = 60 * 1024;
+	// settings already warned about, see checkSettings
+	private static final ConcurrentHashMap<String, Boolean> warned_ = new ConcurrentHashMap<String, Boolean>();
+	private static Sender sender_;
+
+	private LogEmailDigest() {
+
+	}
+
+	/**
+	 * Reads the digest settings the first time an application logs. After that, warns if an application sending
+	 * emails has different settings, which are ignored
+	 *
+	 * @param config
+	 *            OpenLogConfig of the application logging
+	 */
+	static void configure(OpenLogConfig config) {
+		if (configured_) {
+			checkSettings(config);
+			return;
+		}
+		maxGroups_ = config.getEmailDigestMaxGroups();
+		maxStacks_ = config.getEmailDigestMaxStacks();
+		maxSize_ = config.getEmailDigestMaxSize() * 1024;
+		interval_ = config.getEmailDigest();
+		configured_ = true;
+	}
+
+	/**
+	 * Prints a warning the first time an application sending emails is found with digest settings that differ from
+	 * those in use
+	 *
+	 * @param config
+	 *            OpenLogConfig of the application logging
+	 */
+	private static void checkSettings(OpenLogConfig config) {
+		if (StringUtil.isEmpty(config.getLogEmail())) {
+			return;
+		}
+		if (config.getEmailDigest() == interval_ && config.getEmailDigestMaxGroups() == maxGroups_
+				&& config.getEmailDigestMaxStacks() == maxStacks_ && config.getEmailDigestMaxSize() * 1024 == maxSize_) {
+			return;
+		}
+		final String settings = "digest=" + config.getEmailDigest() + ", digestMaxGroups="
+				+ config.getEmailDigestMaxGroups() + ", digestMaxStacks=" + config.getEmailDigestMaxStacks()
+				+ ", digestMaxSize=" + config.getEmailDigestMaxSize();
+		if (null == warned_.putIfAbsent(settings, Boolean.TRUE)) {
+			OpenLogUtil.print("xsp.openlog.email settings " + settings
+					+ " are ignored, the digest uses the settings of the first application to log: digest=" + interval_
+					+ ", digestMaxGroups=" + maxGroups_ + ", digestMaxStacks=" + maxStacks_ + ", digestMaxSize="
+					+ (maxSize_ / 1024));
+		}
+	}
+
+	/**
+	 * @return boolean true if emails are sent as digests
+	 */
+	static boolean isEnabled() {
+		return interval_ > 0;
+	}
+
+	/**
+	 * Adds a record to the next digest for its recipient
+	 *
+	 * @param record
+	 *            LogRecord to be emailed
+	 * @return boolean true, the record has been buffered
+	 */
+	static boolean add(LogRecord record) {
+		final String key = record.getFromServer() + "!!" + record.getLogEmail();
+		final String fingerprint = LogDeduplicator.fingerprint(record);
+		while (true) {
+			Digest digest = digests_.get(key);
+			if (null == digest) {
+				digest = new Digest(record.getFromServer(), record.getLogEmail());
+				final Digest existing = digests_.putIfAbsent(key, digest);
+				if (null != existing) {
+					digest = existing;
+				}
+			}
+			if (digest.add(record, fingerprint, maxGroups_)) {
+				break;
+			}
+			// closed by the sender since it was got, so goes in the next digest
+		}
+		startSender();
+		return true;
+	}
+
+	/**
+	 * Stops the sender, after it has sent any digests waiting. Called when the plugin is stopped.
+	 */
+	static void shutdown() {
+		Sender sender;
+		synchronized (LogEmailDigest.class) {
+			sender = sender_;
+			sender_ = null;
+			configured_ = false;
+			warned_.clear();
+		}
+		if (null != sender) {
+			sender.interrupt();
+			try {
+				sender.join(10000);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static synchronized void startSender() {
+		if (null == sender_ || !sender_.isAlive()) {
+			sender_ = new Sender();
+			sender_.start();
+		}
+	}
+
+	/**
+	 * Called by the sender when there's nothing left to send
+	 *
+	 * @return boolean true if the sender should stop
+	 */
+	private static synchronized boolean finishSending(Sender sender) {
+		if (!digests_.isEmpty() || sender != sender_) {
+			return sender != sender_;
+		}
+		sender_ = null;
+		return true;
+	}
+
+	/**
+	 * Sends every digest waiting. A digest that can't be sent is kept for the next interval
+	 *
+	 * @param session
+	 *            Session of the sender thread
+	 */
+	private static void sendAll(Session session) {
+		for (final Iterator<Map.Entry<String, Digest>> it = digests_.entrySet().iterator(); it.hasNext();) {
+			final Map.Entry<String, Digest> entry = it.next();
+			final Digest digest = entry.getValue();
+			// new entries from here on go into a new digest, any add() that already has this one sees it is closed
+			digests_.remove(entry.getKey(), digest);
+			digest.close();
+			boolean sent = false;
+			try {
+				sent = send(session, digest);
+			} catch (final Throwable t) {
+				OpenLogUtil.debugPrint(t);
+			}
+			if (!sent) {
+				digest.reopen();
+				final Digest newer = digests_.putIfAbsent(entry.getKey(), digest);
+				if (null != newer) {
+					newer.merge(digest, maxGroups_);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param session
+	 *            Session of the sender thread
+	 * @param digest
+	 *            Digest to send
+	 * @return boolean true if the memo was deposited in mail.box
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 */
+	private static boolean send(Session session, Digest digest) throws NotesException {
+		Database mailBox = null;
+		Document memo = null;
+		RichTextItem body = null;
+		DateTime posted = null;
+		try {
+			mailBox = session.getDatabase(digest.server_, "mail.box", false);
+			if (null == mailBox || !mailBox.isOpen()) {
+				OpenLogUtil.print("Could not open mail.box to send OpenLog digest to " + digest.recipients_);
+				return false;
+			}
+			memo = mailBox.createDocument();
+			memo.replaceItemValue("Form", "Memo");
+			memo.replaceItemValue("Subject", digest.getSubject());
+			memo.replaceItemValue("Recipients", digest.recipients_);
+			memo.replaceItemValue("SendTo", digest.recipients_);
+			memo.replaceItemValue("From", session.getEffectiveUserName());
+			memo.replaceItemValue("Principal", session.getEffectiveUserName());
+			posted = session.createDateTime(new Date());
+			memo.replaceItemValue("PostedDate", posted);
+			body = memo.createRichTextItem("Body");
+			for (final String line : digest.getBody(maxStacks_, maxSize_)) {
+				body.appendText(line);
+				body.addNewLine(1);
+			}
+			return memo.save(true);
+		} finally {
+			try {
+				if (null != posted) {
+					posted.recycle();
+				}
+				if (null != body) {
+					body.recycle();
+				}
+				if (null != memo) {
+					memo.recycle();
+				}
+				if (null != mailBox) {
+					mailBox.recycle();
+				}
+			} catch (final Exception e) {
+				// NTF why the hell does .recycle() throw an Exception?
+			}
+		}
+	}
+
+	/**
+	 * Entries waiting to be sent to one recipient
+	 */
+	private static class Digest {
+		private final String server_;
+		private final String recipients_;
+		private final Map<String, Group> groups_ = new LinkedHashMap<String, Group>();
+		private int total_;
+		private int ungrouped_;
+		private boolean closed_;
+
+		Digest(String server, String recipients) {
+			server_ = server;
+			recipients_ = recipients;
+		}
+
+		/**
+		 * @return boolean false if the digest has been closed for sending, so the record wasn't added
+		 */
+		synchronized boolean add(LogRecord record, String fingerprint, int maxGroups) {
+			if (closed_) {
+				return false;
+			}
+			total_++;
+			final Group group = groups_.get(fingerprint);
+			if (null != group) {
+				group.add(record.getEventTime(), 1);
+			} else if (groups_.size() < maxGroups) {
+				groups_.put(fingerprint, new Group(record));
+			} else {
+				ungrouped_++;
+			}
+			return true;
+		}
+
+		/**
+		 * Stops entries being added, once it has been taken to be sent
+		 */
+		synchronized void close() {
+			closed_ = true;
+		}
+
+		/**
+		 * Allows entries to be added again, when it couldn't be sent and is kept for the next interval
+		 */
+		synchronized void reopen() {
+			closed_ = false;
+		}
+
+		/**
+		 * Adds the entries of a digest that couldn't be sent
+		 */
+		synchronized void merge(Digest older, int maxGroups) {
+			synchronized (older) {
+				total_ += older.total_;
+				ungrouped_ += older.ungrouped_;
+				final Map<String, Group> merged = new LinkedHashMap<String, Group>(older.groups_);
+				for (final Map.Entry<String, Group> entry : groups_.entrySet()) {
+					final Group existing = merged.get(entry.getKey());
+					if (null != existing) {
+						existing.add(entry.getValue().lastSeen_, entry.getValue().count_);
+					} else if (merged.size() < maxGroups) {
+						merged.put(entry.getKey(), entry.getValue());
+					} else {
+						ungrouped_ += entry.getValue().count_;
+					}
+				}
+				groups_.clear();
+				groups_.putAll(merged);
+			}
+		}
+
+		synchronized String getSubject() {
+			return "OpenLog digest: " + total_ + " entries (" + groups_.size() + " distinct) on " + server_;
+		}
+
+		synchronized List<String> getBody(int maxStacks, int maxSize) {
+			final List<String> lines = new ArrayList<String>();
+			int size = 0;
+			int stacks = 0;
+			int listed = 0;
+			lines.add(total_ + " OpenLog entries since the last digest, " + groups_.size() + " distinct");
+			lines.add("");
+			for (final Group group : groups_.values()) {
+				final List<String> groupLines = group.getLines(stacks < maxStacks);
+				int groupSize = 0;
+				for (final String line : groupLines) {
+					groupSize += line.length() + 1;
+				}
+				if (size + groupSize > maxSize) {
+					break;
+				}
+				if (null != group.sample_.getStackTrace()) {
+					stacks++;
+				}
+				lines.addAll(groupLines);
+				size += groupSize;
+				listed++;
+			}
+			if (listed < groups_.size() || ungrouped_ > 0) {
+				lines.add("... " + (groups_.size() - listed) + " more distinct entries and " + ungrouped_
+						+ " further entries not shown, see the log database");
+			}
+			return lines;
+		}
+	}
+
+	/**
+	 * Repeats of the same entry
+	 */
+	private static class Group {
+		private final LogRecord sample_;
+		private final Date firstSeen_;
+		private Date lastSeen_;
+		private int count_ = 1;
+
+		Group(LogRecord sample) {
+			sample_ = sample;
+			firstSeen_ = sample.getEventTime();
+			lastSeen_ = firstSeen_;
+		}
+
+		void add(Date seen, int count) {
+			count_ += count;
+			if (null != seen && (null == lastSeen_ || seen.after(lastSeen_))) {
+				lastSeen_ = seen;
+			}
+		}
+
+		List<String> getLines(boolean includeStack) {
+			final List<String> lines = new ArrayList<String>();
+			lines.add(count_ + " x " + sample_.getEventType() + " (" + sample_.getSeverity().getName() + ") in "
+					+ sample_.getFromDatabase() + ", page " + sample_.getFromAgent());
+			lines.add("First seen: " + firstSeen_ + ", last seen: " + lastSeen_);
+			String message = String.valueOf(sample_.getErrorMessage());
+			if (message.length() > MAX_MESSAGE) {
+				message = message.substring(0, MAX_MESSAGE) + "...";
+			}
+			lines.add("Message: " + message);
+			lines.add("User: " + sample_.getUserName());
+			if (null != sample_.getDocUnid()) {
+				lines.add("Document: " + sample_.getDocServer() + "!!" + sample_.getDocFilePath() + ", UNID "
+						+ sample_.getDocUnid());
+			}
+			if (includeStack && null != sample_.getStackTrace()) {
+				lines.add("Stack trace:");
+				for (final String line : sample_.getStackTrace()) {
+					lines.add("    " + line);
+				}
+			}
+			lines.add("");
+			return lines;
+		}
+	}
+
+	/**
+	 * Sender thread, only running while there are digests waiting
+	 */
+	private static class Sender extends NotesThread {
+
+		Sender() {
+			super();
+			setName("OpenLog Email Digest");
+			setDaemon(true);
+		}
+
+		@Override
+		public void runNotes() {
+			Session session = null;
+			boolean stopping = false;
+			try {
+				while (!stopping && !finishSending(this)) {
+					try {
+						Thread.sleep(1000L * interval_);
+					} catch (final InterruptedException e) {
+						// shutting down, send what we have
+						stopping = true;
+					}
+					try {
+						if (null == session || !session.isValid()) {
+							session = NotesFactory.createSession();
+						}
+						sendAll(session);
+					} catch (final Throwable t) {
+						OpenLogUtil.debugPrint(t);
+					}
+				}
+			} finally {
+				try {
+					if (null != session) {
+						session.recycle();
+					}
+				} catch (final Exception e2) {
+					// nothing more we can do
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,230 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Vector;
+import java.util.zip.GZIPOutputStream;
+
+import lotus.domino.EmbeddedObject;
+import lotus.domino.NotesException;
+import lotus.domino.RichTextItem;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Stores oversized messages and stack traces as gzip-compressed attachments in LogDocInfo, keeping a short
+ *        summary in LogMessage / LogStackTrace for the views. Enabled by setting xsp.openlog.payloadThreshold to a
+ *        number of characters, messages or stack traces longer than that are attached. The text is streamed in chunks
+ *        through a GZIPOutputStream to a temporary file and embedded from there, so no other copy of it (rich text,
+ *        byte[] or concatenated String) is built in memory. The setting is shared by all applications on the server,
+ *        so is read from the first application to log.
+ *
+ */
+class LogPayload {
+	static final String MESSAGE_ATTACHMENT = "LogMessage.txt.gz";
+	static final String STACK_ATTACHMENT = "LogStackTrace.txt.gz";
+	private static final int SUMMARY_LENGTH = 1000;
+	private static final int SUMMARY_LINES = 20;
+	private static final int CHUNK = 8192;
+	private static volatile boolean configured_;
+	private static volatile int threshold_;
+
+	private LogPayload() {
+
+	}
+
+	/**
+	 * Reads the threshold the first time an application logs
+	 *
+	 * @param config
+	 *            OpenLogConfig of the application logging
+	 */
+	static void configure(OpenLogConfig config) {
+		if (configured_) {
+			return;
+		}
+		threshold_ = config.getPayloadThreshold();
+		configured_ = true;
+	}
+
+	/**
+	 * @param message
+	 *            String message logged
+	 * @return boolean true if the message should be attached
+	 */
+	static boolean isOversized(String message) {
+		return threshold_ > 0 && null != message && message.length() > threshold_;
+	}
+
+	/**
+	 * @param lines
+	 *            Vector stack trace logged
+	 * @return boolean true if the stack trace should be attached
+	 */
+	static boolean isOversized(List<String> lines) {
+		if (threshold_ <= 0 || null == lines) {
+			return false;
+		}
+		int length = 0;
+		for (final String line : lines) {
+			length += line.length() + 1;
+			if (length > threshold_) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param message
+	 *            String oversized message
+	 * @return String start of the message, for LogMessage
+	 */
+	static String summarise(String message) {
+		return message.substring(0, Math.min(SUMMARY_LENGTH, message.length())) + "... (" + message.length()
+				+ " characters, see " + MESSAGE_ATTACHMENT + ")";
+	}
+
+	/**
+	 * @param lines
+	 *            Vector oversized stack trace
+	 * @return Vector first lines of the stack trace, for LogStackTrace
+	 */
+	static Vector<String> summarise(List<String> lines) {
+		final Vector<String> summary = new Vector<String>(SUMMARY_LINES + 1);
+		for (int i = 0; i < SUMMARY_LINES && i < lines.size(); i++) {
+			summary.addElement(lines.get(i));
+		}
+		summary.addElement("... " + lines.size() + " lines, see " + STACK_ATTACHMENT);
+		return summary;
+	}
+
+	/**
+	 * Attaches a message, compressed
+	 *
+	 * @param rtitem
+	 *            RichTextItem to attach to
+	 * @param message
+	 *            String message
+	 * @throws IOException
+	 *             if the temporary file cannot be written
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 */
+	static void attach(RichTextItem rtitem, String message) throws IOException, NotesException {
+		final File file = createFile(MESSAGE_ATTACHMENT);
+		try {
+			final Writer out = open(file);
+			try {
+				write(out, message);
+			} finally {
+				out.close();
+			}
+			embed(rtitem, file);
+		} finally {
+			delete(file);
+		}
+	}
+
+	/**
+	 * Attaches a stack trace, compressed, one line per element
+	 *
+	 * @param rtitem
+	 *            RichTextItem to attach to
+	 * @param lines
+	 *            Vector stack trace
+	 * @throws IOException
+	 *             if the temporary file cannot be written
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 */
+	static void attach(RichTextItem rtitem, List<String> lines) throws IOException, NotesException {
+		final File file = createFile(STACK_ATTACHMENT);
+		try {
+			final Writer out = open(file);
+			try {
+				for (final String line : lines) {
+					write(out, line);
+					out.write('\n');
+				}
+			} finally {
+				out.close();
+			}
+			embed(rtitem, file);
+		} finally {
+			delete(file);
+		}
+	}
+
+	/**
+	 * The attachment takes the name of the file embedded, so each file gets its own temporary directory
+	 */
+	private static File createFile(String name) throws IOException {
+		final File dir = File.createTempFile("openlog", "");
+		if (!dir.delete() || !dir.mkdir()) {
+			throw new IOException("Could not create temporary directory " + dir.getPath());
+		}
+		return new File(dir, name);
+	}
+
+	private static void delete(File file) {
+		file.delete();
+		file.getParentFile().delete();
+	}
+
+	private static Writer open(File file) throws IOException {
+		final FileOutputStream fos = new FileOutputStream(file);
+		try {
+			return new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(fos, CHUNK), "UTF-8"), CHUNK);
+		} catch (final IOException e) {
+			fos.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes a String in chunks, so the encoder never needs a copy of the whole String
+	 */
+	private static void write(Writer out, String text) throws IOException {
+		for (int i = 0; i < text.length(); i += CHUNK) {
+			out.write(text, i, Math.min(CHUNK, text.length() - i));
+		}
+	}
+
+	private static void embed(RichTextItem rtitem, File file) throws NotesException {
+		final EmbeddedObject attachment = rtitem.embedObject(EmbeddedObject.EMBED_ATTACHMENT, "", file.getPath(),
+				null);
+		try {
+			if (null != attachment) {
+				attachment.recycle();
+			}
+		} catch (final Exception e) {
+			// NTF why the hell does .recycle() throw an Exception?
+		}
+	}
+
+}
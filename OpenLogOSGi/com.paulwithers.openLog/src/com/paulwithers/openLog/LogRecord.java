@@ -0,0 +1,431 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Snapshot of everything written to a single OpenLog document. All values are captured on the request thread
+ *        while the XPages context is still available, so the record holds no Domino objects and can safely be handed
+ *        to another thread to be written. Values are only set by OpenLogItem and {@link OpenLog.Builder} while the
+ *        record is being created, after that it is not changed. The form, type and severity are fixed when it is
+ *        constructed, lists are copied when they are set and returned unmodifiable, and dates are copied both ways, so
+ *        nothing returned by a getter can change the record or another record sharing the same values.
+ *
+ */
+public class LogRecord implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final String _formName;
+	private final String _eventType;
+	private final Level _severity;
+	private String _message;
+	private String _errorMessage;
+	private Integer _errorNumber;
+	private List<String> _stackTrace;
+	private int _errorLine;
+	private String _fromMethod;
+	private Date _eventTime;
+	private Date _startTime;
+	private String _fromDatabase;
+	private String _fromServer;
+	private String _fromAgent;
+	private String _userName;
+	private String _effectiveName;
+	private String _accessLevel;
+	private List<String> _userRoles;
+	private List<String> _clientVersion;
+	private String _logDbName;
+	private String _logEmail;
+	private String _logExpireDate;
+	private String _logTemplatePath;
+	private String _docServer;
+	private String _docFilePath;
+	private String _docUnid;
+	private String _docNoteId;
+	private String _fingerprint;
+	private double _sampleWeight = 1;
+	private String _stackHash;
+	private Map<String, String> _fields = Collections.emptyMap();
+
+	/**
+	 * @param formName
+	 *            String Form to create the log document with
+	 * @param eventType
+	 *            String "Error" or "Event"
+	 * @param severity
+	 *            Level logged at
+	 */
+	LogRecord(String formName, String eventType, Level severity) {
+		_formName = formName;
+		_eventType = eventType;
+		_severity = severity;
+	}
+
+	/**
+	 * @param values
+	 *            List to copy or null
+	 * @return unmodifiable copy or null
+	 */
+	private static List<String> copy(List<String> values) {
+		return null == values ? null : Collections.unmodifiableList(new ArrayList<String>(values));
+	}
+
+	/**
+	 * @param date
+	 *            Date to copy or null
+	 * @return copy or null
+	 */
+	private static Date copy(Date date) {
+		return null == date ? null : new Date(date.getTime());
+	}
+
+	/**
+	 * @return Form to create the log document with
+	 */
+	public String getFormName() {
+		return _formName;
+	}
+
+	/**
+	 * @return "Error" or "Event", see {@link OpenLogItem.LogType}
+	 */
+	public String getEventType() {
+		return _eventType;
+	}
+
+	/**
+	 * @return Level logged at
+	 */
+	public Level getSeverity() {
+		return _severity;
+	}
+
+	/**
+	 * @return the message passed by the developer or the error's own message
+	 */
+	public String getMessage() {
+		return _message;
+	}
+
+	void setMessage(String message) {
+		_message = message;
+	}
+
+	/**
+	 * @return the message written to LogErrorMessage, prefixed with any Notes or SSJS error details
+	 */
+	public String getErrorMessage() {
+		return _errorMessage;
+	}
+
+	void setErrorMessage(String errorMessage) {
+		_errorMessage = errorMessage;
+	}
+
+	/**
+	 * @return NotesException id or null if the error was not a NotesException
+	 */
+	public Integer getErrorNumber() {
+		return _errorNumber;
+	}
+
+	void setErrorNumber(Integer errorNumber) {
+		_errorNumber = errorNumber;
+	}
+
+	/**
+	 * @return unmodifiable List of stack trace lines or null if the stack trace is not to be logged
+	 */
+	public List<String> getStackTrace() {
+		return _stackTrace;
+	}
+
+	void setStackTrace(List<String> stackTrace) {
+		_stackTrace = copy(stackTrace);
+	}
+
+	/**
+	 * @return line number of the top stack frame
+	 */
+	public int getErrorLine() {
+		return _errorLine;
+	}
+
+	void setErrorLine(int errorLine) {
+		_errorLine = errorLine;
+	}
+
+	/**
+	 * @return method of the top stack frame or null if there was no stack frame
+	 */
+	public String getFromMethod() {
+		return _fromMethod;
+	}
+
+	void setFromMethod(String fromMethod) {
+		_fromMethod = fromMethod;
+	}
+
+	/**
+	 * @return when the error / event was logged
+	 */
+	public Date getEventTime() {
+		return copy(_eventTime);
+	}
+
+	void setEventTime(Date eventTime) {
+		_eventTime = copy(eventTime);
+	}
+
+	/**
+	 * @return start time to group related log documents
+	 */
+	public Date getStartTime() {
+		return copy(_startTime);
+	}
+
+	void setStartTime(Date startTime) {
+		_startTime = copy(startTime);
+	}
+
+	/**
+	 * @return filepath of the database the error / event was logged from
+	 */
+	public String getFromDatabase() {
+		return _fromDatabase;
+	}
+
+	void setFromDatabase(String fromDatabase) {
+		_fromDatabase = fromDatabase;
+	}
+
+	/**
+	 * @return server the error / event was logged from
+	 */
+	public String getFromServer() {
+		return _fromServer;
+	}
+
+	void setFromServer(String fromServer) {
+		_fromServer = fromServer;
+	}
+
+	/**
+	 * @return XPage the error / event was logged from
+	 */
+	public String getFromAgent() {
+		return _fromAgent;
+	}
+
+	void setFromAgent(String fromAgent) {
+		_fromAgent = fromAgent;
+	}
+
+	/**
+	 * @return current user name
+	 */
+	public String getUserName() {
+		return _userName;
+	}
+
+	void setUserName(String userName) {
+		_userName = userName;
+	}
+
+	/**
+	 * @return effective user name
+	 */
+	public String getEffectiveName() {
+		return _effectiveName;
+	}
+
+	void setEffectiveName(String effectiveName) {
+		_effectiveName = effectiveName;
+	}
+
+	/**
+	 * @return access level of the current user to the current database
+	 */
+	public String getAccessLevel() {
+		return _accessLevel;
+	}
+
+	void setAccessLevel(String accessLevel) {
+		_accessLevel = accessLevel;
+	}
+
+	/**
+	 * @return unmodifiable List of roles of the current user in the current database
+	 */
+	public List<String> getUserRoles() {
+		return _userRoles;
+	}
+
+	void setUserRoles(List<String> userRoles) {
+		_userRoles = copy(userRoles);
+	}
+
+	/**
+	 * @return unmodifiable List of server / client version
+	 */
+	public List<String> getClientVersion() {
+		return _clientVersion;
+	}
+
+	void setClientVersion(List<String> clientVersion) {
+		_clientVersion = copy(clientVersion);
+	}
+
+	/**
+	 * @return filepath of the log database
+	 */
+	public String getLogDbName() {
+		return _logDbName;
+	}
+
+	void setLogDbName(String logDbName) {
+		_logDbName = logDbName;
+	}
+
+	/**
+	 * @return email address to send the log document to or an empty string
+	 */
+	public String getLogEmail() {
+		return _logEmail;
+	}
+
+	void setLogEmail(String logEmail) {
+		_logEmail = logEmail;
+	}
+
+	/**
+	 * @return number of days after which the log document expires or an empty string
+	 */
+	public String getLogExpireDate() {
+		return _logExpireDate;
+	}
+
+	void setLogExpireDate(String logExpireDate) {
+		_logExpireDate = logExpireDate;
+	}
+
+	/**
+	 * @return filepath of the template to create the log database from or an empty string
+	 */
+	public String getLogTemplatePath() {
+		return _logTemplatePath;
+	}
+
+	void setLogTemplatePath(String logTemplatePath) {
+		_logTemplatePath = logTemplatePath;
+	}
+
+	/**
+	 * @return server of the database the associated document is in
+	 */
+	public String getDocServer() {
+		return _docServer;
+	}
+
+	/**
+	 * @return filepath of the database the associated document is in
+	 */
+	public String getDocFilePath() {
+		return _docFilePath;
+	}
+
+	/**
+	 * @return UNID of the associated document or null if there is none
+	 */
+	public String getDocUnid() {
+		return _docUnid;
+	}
+
+	/**
+	 * @return Note ID of the associated document
+	 */
+	public String getDocNoteId() {
+		return _docNoteId;
+	}
+
+	void setDoc(String server, String filePath, String unid, String noteId) {
+		_docServer = server;
+		_docFilePath = filePath;
+		_docUnid = unid;
+		_docNoteId = noteId;
+	}
+
+	/**
+	 * @return fingerprint identifying repeats of the same error / event or null if repeats are not collapsed
+	 */
+	public String getFingerprint() {
+		return _fingerprint;
+	}
+
+	void setFingerprint(String fingerprint) {
+		_fingerprint = fingerprint;
+	}
+
+	/**
+	 * @return number of events this record represents after sampling, see {@link LogSampler}
+	 */
+	public double getSampleWeight() {
+		return _sampleWeight;
+	}
+
+	void setSampleWeight(double sampleWeight) {
+		_sampleWeight = sampleWeight;
+	}
+
+	/**
+	 * @return hash of the stack trace if it is to be stored in a separate LogStack document, see
+	 *         {@link LogStackStore}, otherwise null
+	 */
+	public String getStackHash() {
+		return _stackHash;
+	}
+
+	void setStackHash(String stackHash) {
+		_stackHash = stackHash;
+	}
+
+	/**
+	 * @return unmodifiable Map of structured key / value fields, see {@link OpenLog.Builder#field(String, Object)}.
+	 *         Empty if there are none
+	 */
+	public Map<String, String> getFields() {
+		return _fields;
+	}
+
+	void setFields(Map<String, String> fields) {
+		_fields = Collections.unmodifiableMap(new LinkedHashMap<String, String>(fields));
+	}
+
+}
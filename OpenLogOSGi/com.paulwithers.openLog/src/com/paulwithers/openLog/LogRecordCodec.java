@@ -0,0 +1,220 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Compact binary encoding of a {@link LogRecord}, used by {@link LogSpool}. Much smaller and quicker than Java
+ *        serialization, because only the values are written, in a fixed order after a format version byte. Strings
+ *        are written as a length and UTF-8 bytes, with a length of -1 for null, so messages over 64k are supported.
+ *
+ */
+class LogRecordCodec {
+	private static final byte VERSION = 1;
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private LogRecordCodec() {
+
+	}
+
+	/**
+	 * @param record
+	 *            LogRecord to encode
+	 * @return byte[] encoded record
+	 * @throws IOException
+	 *             if the record cannot be encoded
+	 */
+	static byte[] encode(LogRecord record) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(VERSION);
+		writeString(out, record.getFormName());
+		writeString(out, record.getEventType());
+		writeString(out, null == record.getSeverity() ? null : record.getSeverity().getName());
+		writeString(out, record.getMessage());
+		writeString(out, record.getErrorMessage());
+		out.writeBoolean(null != record.getErrorNumber());
+		if (null != record.getErrorNumber()) {
+			out.writeInt(record.getErrorNumber().intValue());
+		}
+		writeStrings(out, record.getStackTrace());
+		out.writeInt(record.getErrorLine());
+		writeString(out, record.getFromMethod());
+		writeDate(out, record.getEventTime());
+		writeDate(out, record.getStartTime());
+		writeString(out, record.getFromDatabase());
+		writeString(out, record.getFromServer());
+		writeString(out, record.getFromAgent());
+		writeString(out, record.getUserName());
+		writeString(out, record.getEffectiveName());
+		writeString(out, record.getAccessLevel());
+		writeStrings(out, record.getUserRoles());
+		writeStrings(out, record.getClientVersion());
+		writeString(out, record.getLogDbName());
+		writeString(out, record.getLogEmail());
+		writeString(out, record.getLogExpireDate());
+		writeString(out, record.getLogTemplatePath());
+		writeString(out, record.getDocServer());
+		writeString(out, record.getDocFilePath());
+		writeString(out, record.getDocUnid());
+		writeString(out, record.getDocNoteId());
+		writeString(out, record.getFingerprint());
+		out.writeDouble(record.getSampleWeight());
+		writeString(out, record.getStackHash());
+		out.writeInt(record.getFields().size());
+		for (final Map.Entry<String, String> field : record.getFields().entrySet()) {
+			writeString(out, field.getKey());
+			writeString(out, field.getValue());
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param data
+	 *            byte[] from {@link #encode(LogRecord)}
+	 * @return LogRecord decoded
+	 * @throws IOException
+	 *             if the data is not a record in a known format, including any value that can't be read back, such
+	 *             as an unknown severity
+	 */
+	static LogRecord decode(byte[] data) throws IOException {
+		try {
+			return read(data);
+		} catch (final RuntimeException e) {
+			final IOException ioe = new IOException("Invalid OpenLog record: " + e);
+			ioe.initCause(e);
+			throw ioe;
+		}
+	}
+
+	private static LogRecord read(byte[] data) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		final byte version = in.readByte();
+		if (version != VERSION) {
+			throw new IOException("Unknown OpenLog record format " + version);
+		}
+		final String formName = readString(in);
+		final String eventType = readString(in);
+		final String severity = readString(in);
+		final LogRecord record = new LogRecord(formName, eventType, null == severity ? null : Level.parse(severity));
+		record.setMessage(readString(in));
+		record.setErrorMessage(readString(in));
+		if (in.readBoolean()) {
+			record.setErrorNumber(Integer.valueOf(in.readInt()));
+		}
+		record.setStackTrace(readStrings(in));
+		record.setErrorLine(in.readInt());
+		record.setFromMethod(readString(in));
+		record.setEventTime(readDate(in));
+		record.setStartTime(readDate(in));
+		record.setFromDatabase(readString(in));
+		record.setFromServer(readString(in));
+		record.setFromAgent(readString(in));
+		record.setUserName(readString(in));
+		record.setEffectiveName(readString(in));
+		record.setAccessLevel(readString(in));
+		record.setUserRoles(readStrings(in));
+		record.setClientVersion(readStrings(in));
+		record.setLogDbName(readString(in));
+		record.setLogEmail(readString(in));
+		record.setLogExpireDate(readString(in));
+		record.setLogTemplatePath(readString(in));
+		record.setDoc(readString(in), readString(in), readString(in), readString(in));
+		record.setFingerprint(readString(in));
+		record.setSampleWeight(in.readDouble());
+		record.setStackHash(readString(in));
+		final int fieldCount = in.readInt();
+		if (fieldCount > 0) {
+			final Map<String, String> fields = new LinkedHashMap<String, String>();
+			for (int i = 0; i < fieldCount; i++) {
+				fields.put(readString(in), readString(in));
+			}
+			record.setFields(fields);
+		}
+		return record;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (null == value) {
+			out.writeInt(-1);
+		} else {
+			final byte[] bytes = value.getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+		if (null == values) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(values.size());
+			for (final String value : values) {
+				writeString(out, value);
+			}
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		final int size = in.readInt();
+		if (size < 0) {
+			return null;
+		}
+		final List<String> values = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			values.add(readString(in));
+		}
+		return values;
+	}
+
+	private static void writeDate(DataOutputStream out, Date value) throws IOException {
+		out.writeLong(null == value ? NO_DATE : value.getTime());
+	}
+
+	private static Date readDate(DataInputStream in) throws IOException {
+		final long time = in.readLong();
+		return time == NO_DATE ? null : new Date(time);
+	}
+
+}
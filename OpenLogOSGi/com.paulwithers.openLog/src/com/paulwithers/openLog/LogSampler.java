@@ -0,0 +1,152 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Decides whether an event is logged, so event logging can be left on in production. Errors, and events at
+ *        SEVERE or WARNING, are always logged. Other events go through two stages:
+ *        <ol>
+ *        <li>Probabilistic sampling, xsp.openlog.sampleRate.&lt;level&gt; e.g. xsp.openlog.sampleRate.fine=0.01 logs 1
+ *        in 100 FINE events. Default 1, log everything</li>
+ *        <li>A token bucket per page (or per database if xsp.openlog.eventRateLimitBy=database) allowing
+ *        xsp.openlog.eventRateLimit events per second. Default 0, no limit</li>
+ *        </ol>
+ *        Each event logged gets a weight, the number of events it represents, written to LogSampleWeight so counts
+ *        can be extrapolated.
+ *
+ */
+class LogSampler {
+	private static final int MAX_BUCKETS = 10000;
+	private static final ConcurrentHashMap<String, TokenBucket> buckets_ = new ConcurrentHashMap<String, TokenBucket>();
+	private static final ThreadLocal<Random> random_ = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			return new Random();
+		}
+	};
+
+	private LogSampler() {
+
+	}
+
+	/**
+	 * @param severity
+	 *            Level of the event
+	 * @param database
+	 *            String filepath of the database logging the event
+	 * @param page
+	 *            String page logging the event
+	 * @param config
+	 *            LogSettings current settings
+	 * @return double weight of the event if it should be logged, or 0 if it has been sampled out
+	 */
+	static double sample(Level severity, String database, String page, LogSettings config) {
+		if (null == severity || severity.intValue() >= Level.WARNING.intValue()) {
+			return 1;
+		}
+		double weight = 1;
+		final double rate = config.getSampleRate(severity);
+		if (rate < 1) {
+			if (rate <= 0 || random_.get().nextDouble() >= rate) {
+				return 0;
+			}
+			weight = 1 / rate;
+		}
+		final double limit = config.getEventRateLimit();
+		if (limit > 0) {
+			String key = database;
+			if (!config.isEventRateLimitByDatabase()) {
+				key = database + "!!" + page;
+			}
+			final int represented = getBucket(key, limit).acquire(limit, System.nanoTime());
+			if (represented == 0) {
+				return 0;
+			}
+			weight *= represented;
+		}
+		return weight;
+	}
+
+	/**
+	 * @param key
+	 *            String database or database and page
+	 * @param limit
+	 *            double events per second
+	 * @return TokenBucket for the key
+	 */
+	private static TokenBucket getBucket(String key, double limit) {
+		TokenBucket bucket = buckets_.get(key);
+		if (null == bucket) {
+			if (buckets_.size() > MAX_BUCKETS) {
+				// pages with query strings could otherwise grow this forever
+				buckets_.clear();
+			}
+			bucket = new TokenBucket(limit, System.nanoTime());
+			final TokenBucket existing = buckets_.putIfAbsent(key, bucket);
+			if (null != existing) {
+				bucket = existing;
+			}
+		}
+		return bucket;
+	}
+
+	/**
+	 * Allows limit events per second with bursts of up to limit events, counting the events refused in between
+	 */
+	private static class TokenBucket {
+		private double tokens_;
+		private long lastRefill_;
+		private int refused_;
+
+		TokenBucket(double limit, long now) {
+			tokens_ = Math.max(1, limit);
+			lastRefill_ = now;
+		}
+
+		/**
+		 * @param limit
+		 *            double events per second
+		 * @param now
+		 *            long System.nanoTime()
+		 * @return int number of events represented by this one, including those refused since the last one allowed,
+		 *         or 0 if refused
+		 */
+		synchronized int acquire(double limit, long now) {
+			final double capacity = Math.max(1, limit);
+			tokens_ = Math.min(capacity, tokens_ + (now - lastRefill_) * limit / 1000000000d);
+			lastRefill_ = now;
+			if (tokens_ < 1) {
+				refused_++;
+				return 0;
+			}
+			tokens_--;
+			final int represented = refused_ + 1;
+			refused_ = 0;
+			return represented;
+		}
+	}
+
+}
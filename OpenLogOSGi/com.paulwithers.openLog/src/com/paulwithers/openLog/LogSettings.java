@@ -0,0 +1,114 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.logging.Level;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Settings read by the Domino-free core: the {@link OpenLogWriter}, {@link LogSinks}, {@link FileLogSink} and
+ *        {@link LogSampler}. In the plugin these come from {@link OpenLogConfig}, elsewhere, e.g. in tests, any
+ *        implementation can be passed.
+ *
+ */
+interface LogSettings {
+
+	/**
+	 * @return xsp.openlog.async.queueSize, default 1000
+	 */
+	int getAsyncQueueSize();
+
+	/**
+	 * @return xsp.openlog.async.threads, default 1
+	 */
+	int getAsyncThreads();
+
+	/**
+	 * @return xsp.openlog.async.shutdownTimeout in milliseconds, default 10000
+	 */
+	int getAsyncShutdownTimeout();
+
+	/**
+	 * @return xsp.openlog.async.batchSize, default 50
+	 */
+	int getAsyncBatchSize();
+
+	/**
+	 * @return xsp.openlog.async.flushInterval in milliseconds, default 500
+	 */
+	int getAsyncFlushInterval();
+
+	/**
+	 * @param level
+	 *            Level of the event
+	 * @return xsp.openlog.sampleRate.&lt;level&gt;, the proportion of events at that level to log, default 1
+	 */
+	double getSampleRate(Level level);
+
+	/**
+	 * @return xsp.openlog.eventRateLimit, events per second per page or database, default 0 for no limit
+	 */
+	double getEventRateLimit();
+
+	/**
+	 * @return true if xsp.openlog.eventRateLimitBy=database, otherwise events are limited per page
+	 */
+	boolean isEventRateLimitByDatabase();
+
+	/**
+	 * @return xsp.openlog.sinks, names of the {@link LogSink}s to write to, default "nsf"
+	 */
+	String[] getSinks();
+
+	/**
+	 * @return xsp.openlog.file.directory, folder for the "file" sink
+	 */
+	String getFileDirectory();
+
+	/**
+	 * @return xsp.openlog.file.name, name of the "file" sink's files, without extension. Default "openlog"
+	 */
+	String getFileName();
+
+	/**
+	 * @return xsp.openlog.file.maxSize, KB after which the "file" sink starts a new file, default 10240, 0 for no
+	 *         limit
+	 */
+	int getFileMaxSize();
+
+	/**
+	 * @return xsp.openlog.file.rollInterval, minutes after which the "file" sink starts a new file, default 1440, 0
+	 *         for no limit
+	 */
+	int getFileRollInterval();
+
+	/**
+	 * @return xsp.openlog.file.fsyncInterval, minimum milliseconds between forcing the "file" sink's writes to disk,
+	 *         -1 to leave it to the operating system
+	 */
+	int getFileFsyncInterval();
+
+	/**
+	 * @return xsp.openlog.file.gzip, whether the "file" sink compresses files once they are rolled
+	 */
+	boolean isFileGzip();
+
+}
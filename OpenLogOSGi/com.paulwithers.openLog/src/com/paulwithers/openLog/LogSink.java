@@ -0,0 +1,82 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.List;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Destination for {@link LogRecord}s. Capturing, sampling, de-duplicating, queueing and batching records
+ *        doesn't depend on Domino, a sink does the writing. The OpenLog database / mail.box is one sink, called
+ *        "nsf". Sinks are registered with {@link LogSinks#register(LogSink)} and records are written to every sink
+ *        listed in xsp.openlog.sinks that accepts them.<br>
+ *        <br>
+ *        With xsp.openlog.async=true, sinks are called by the {@link OpenLogWriter} threads, so several threads may
+ *        call the same sink at once. Otherwise they are called on the request thread, and the "nsf" sink is replaced
+ *        by one using the request's Sessions, as before. Records must not be kept after {@link #write(List)}
+ *        returns, unless they are copied.
+ *
+ */
+public interface LogSink {
+
+	/**
+	 * @return String name used in xsp.openlog.sinks, e.g. "nsf"
+	 */
+	String getName();
+
+	/**
+	 * @param record
+	 *            LogRecord to be written
+	 * @return boolean true if this sink writes the record, e.g. a sink may only take events
+	 */
+	boolean accepts(LogRecord record);
+
+	/**
+	 * Writes records, in the order passed
+	 *
+	 * @param records
+	 *            List of records accepted by this sink, never empty
+	 * @return int number of records written
+	 * @throws Exception
+	 *             if the records could not be written
+	 */
+	int write(List<LogRecord> records) throws Exception;
+
+	/**
+	 * Called after each batch by each writer thread, and every 10 seconds while it is idle, and after each write on
+	 * the request thread. Sinks that buffer records should commit them here
+	 *
+	 * @throws Exception
+	 *             if buffered records could not be written
+	 */
+	void flush() throws Exception;
+
+	/**
+	 * Releases anything held for the calling thread. Called by each writer thread before it stops
+	 */
+	void release();
+
+	/**
+	 * Releases everything, called once when the plugin is stopped, after the writer threads have stopped
+	 */
+	void close();
+
+}
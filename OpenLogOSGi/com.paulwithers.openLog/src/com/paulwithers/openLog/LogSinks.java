@@ -0,0 +1,250 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Registry of {@link LogSink}s, and routing of records to them. xsp.openlog.sinks is a comma-separated list of
+ *        the sinks to write to, default "nsf" for the OpenLog database. "file" writes JSON lines to local disk, see
+ *        {@link FileLogSink}. Like the writer, the sinks are shared by all applications on the server, so the list is
+ *        read from the first application to log. The "nsf" sink is registered by the {@link Activator}, so outside
+ *        the plugin nothing here needs Domino.
+ *
+ */
+public final class LogSinks {
+	static final String NSF = "nsf";
+	static final String FILE = "file";
+	private static final ConcurrentHashMap<String, LogSink> sinks_ = new ConcurrentHashMap<String, LogSink>();
+	private static volatile boolean configured_;
+	private static volatile String[] names_ = { NSF };
+	private static volatile List<LogSink> active_ = Collections.emptyList();
+
+	private LogSinks() {
+
+	}
+
+	/**
+	 * Reads xsp.openlog.sinks the first time an application logs
+	 *
+	 * @param config
+	 *            LogSettings of the application logging
+	 */
+	static void configure(LogSettings config) {
+		if (configured_) {
+			return;
+		}
+		names_ = config.getSinks();
+		for (final String name : names_) {
+			if (FILE.equals(name)) {
+				// only created if used, the file is opened on the first write
+				sinks_.putIfAbsent(FILE, new FileLogSink(config));
+			}
+		}
+		configured_ = true;
+		refresh();
+		for (final String name : names_) {
+			if (!sinks_.containsKey(name)) {
+				LogDebug.print("No OpenLog sink registered called " + name);
+			}
+		}
+	}
+
+	/**
+	 * Registers a sink, replacing and closing any sink already registered with the same name. It is only written to
+	 * if its name is in xsp.openlog.sinks
+	 *
+	 * @param sink
+	 *            LogSink to register
+	 */
+	public static void register(LogSink sink) {
+		final LogSink old = sinks_.put(sink.getName(), sink);
+		refresh();
+		if (null != old && old != sink) {
+			old.close();
+		}
+	}
+
+	/**
+	 * Removes and closes a sink
+	 *
+	 * @param name
+	 *            String name of the sink
+	 */
+	public static void unregister(String name) {
+		final LogSink old = sinks_.remove(name);
+		refresh();
+		if (null != old) {
+			old.close();
+		}
+	}
+
+	private static synchronized void refresh() {
+		final List<LogSink> active = new ArrayList<LogSink>(names_.length);
+		for (final String name : names_) {
+			final LogSink sink = sinks_.get(name);
+			if (null != sink) {
+				active.add(sink);
+			}
+		}
+		active_ = Collections.unmodifiableList(active);
+	}
+
+	/**
+	 * @param name
+	 *            String name of a sink
+	 * @return boolean true if the sink is registered and in xsp.openlog.sinks
+	 */
+	static boolean isActive(String name) {
+		for (final LogSink sink : active_) {
+			if (sink.getName().equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes a batch to every active sink that accepts the records. Called by the writer threads
+	 *
+	 * @param batch
+	 *            List of records
+	 */
+	static void write(List<LogRecord> batch) {
+		for (final LogSink sink : active_) {
+			write(sink, batch);
+		}
+	}
+
+	/**
+	 * Writes records on the request thread to every active sink. Each sink gets all the records in one batch and is
+	 * flushed once
+	 *
+	 * @param batch
+	 *            List of records to write, may be empty to only update repeat counts
+	 * @param nsf
+	 *            LogSink to use instead of the registered "nsf" sink, using the request's Sessions, or null
+	 * @return int number of records, less the most any sink failed to write of those it accepts
+	 */
+	static int writeDirect(List<LogRecord> batch, LogSink nsf) {
+		int missed = 0;
+		for (final LogSink active : active_) {
+			final boolean isNsf = NSF.equals(active.getName());
+			if (isNsf && null == nsf) {
+				continue;
+			}
+			final LogSink sink = isNsf ? nsf : active;
+			int accepted = 0;
+			for (final LogRecord record : batch) {
+				if (sink.accepts(record)) {
+					accepted++;
+				}
+			}
+			if (accepted > 0) {
+				missed = Math.max(missed, accepted - write(sink, batch));
+			}
+			// "nsf" is always flushed, so repeat counts are updated even if every record was a repeat
+			if (accepted > 0 || isNsf) {
+				flush(sink);
+			}
+		}
+		return batch.size() - missed;
+	}
+
+	private static int write(LogSink sink, List<LogRecord> batch) {
+		List<LogRecord> accepted = batch;
+		for (int i = 0; i < batch.size(); i++) {
+			if (!sink.accepts(batch.get(i))) {
+				// copy the ones before this, then only those accepted
+				accepted = new ArrayList<LogRecord>(batch.subList(0, i));
+				for (int j = i + 1; j < batch.size(); j++) {
+					if (sink.accepts(batch.get(j))) {
+						accepted.add(batch.get(j));
+					}
+				}
+				break;
+			}
+		}
+		if (accepted.isEmpty()) {
+			return 0;
+		}
+		try {
+			final int written = sink.write(accepted);
+			OpenLogStats.written(written);
+			return written;
+		} catch (final Throwable t) {
+			OpenLogStats.dropped(accepted.size());
+			LogDebug.print(accepted.size() + " OpenLog entries could not be written to " + sink.getName());
+			LogDebug.debugPrint(t);
+			return 0;
+		}
+	}
+
+	/**
+	 * Flushes every active sink. Called by the writer threads after each batch, and every
+	 * {@link LogDeduplicator#UPDATE_INTERVAL} milliseconds when idle
+	 */
+	static void flush() {
+		for (final LogSink sink : active_) {
+			flush(sink);
+		}
+	}
+
+	private static void flush(LogSink sink) {
+		try {
+			sink.flush();
+		} catch (final Throwable t) {
+			LogDebug.debugPrint(t);
+		}
+	}
+
+	/**
+	 * Releases the calling writer thread from every active sink
+	 */
+	static void release() {
+		for (final LogSink sink : active_) {
+			try {
+				sink.release();
+			} catch (final Throwable t) {
+				LogDebug.debugPrint(t);
+			}
+		}
+	}
+
+	/**
+	 * Closes every registered sink. Called when the plugin is stopped, after the writer
+	 */
+	public static void shutdown() {
+		for (final LogSink sink : sinks_.values()) {
+			try {
+				sink.close();
+			} catch (final Throwable t) {
+				LogDebug.debugPrint(t);
+			}
+		}
+		configured_ = false;
+	}
+
+}
@@ -0,0 +1,556 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import com.ibm.commons.util.StringUtil;
+
+import lotus.domino.Database;
+import lotus.domino.NotesFactory;
+import lotus.domino.NotesThread;
+import lotus.domino.Session;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Local spool for log entries that could not be written because the log database could not be opened. Entries
+ *        are appended to a memory-mapped file, openlog.spool, in {@link LogRecordCodec} format. A background thread
+ *        writes them to the log database, oldest first, once it can be opened again. Entries for a database that is
+ *        still unavailable are moved to the end, so they don't hold up entries for other databases. The spool is shared by all
+ *        applications on the server, so these xsp.properties / notes.ini settings are read from the first application
+ *        to log:
+ *        <ul>
+ *        <li>xsp.openlog.spool - false to discard entries instead, as before 8.1.0. Default true</li>
+ *        <li>xsp.openlog.spool.directory - directory for the spool file, default the "openlog" folder in the Domino
+ *        data directory</li>
+ *        <li>xsp.openlog.spool.size - maximum size of the spool file in KB, default 16384. When it is full, new
+ *        entries are discarded</li>
+ *        </ul>
+ *        The file starts with a header holding the positions of the oldest entry and the end of the last one. Each
+ *        entry is its length, a CRC32 of its data and the data. The header is only updated once an entry has been
+ *        written, and every entry is checked against its CRC when the spool is reopened, so an entry torn by a crash
+ *        is discarded rather than replayed.
+ *
+ */
+class LogSpool {
+	private static final String FILE_NAME = "openlog.spool";
+	private static final int MAGIC = 0x4F4C5350;
+	private static final int FORMAT = 1;
+	private static final int HEAD_POS = 8;
+	private static final int TAIL_POS = 12;
+	private static final int DATA_START = 16;
+	private static final int ENTRY_HEADER = 8;
+	private static final long REPLAY_INTERVAL = 30000;
+	private static final int REPLAY_BATCH = 200;
+
+	private static volatile boolean configured_;
+	private static File file_;
+	private static int size_;
+	private static LogSpool instance_;
+
+	private final RandomAccessFile raf_;
+	private final FileChannel channel_;
+	private final MappedByteBuffer buffer_;
+	private final int capacity_;
+	private int head_;
+	private int tail_;
+	private Replayer replayer_;
+
+	private LogSpool(File file, int size) throws IOException {
+		file.getParentFile().mkdirs();
+		raf_ = new RandomAccessFile(file, "rw");
+		if (raf_.length() < size) {
+			raf_.setLength(size);
+		}
+		capacity_ = (int) Math.min(Integer.MAX_VALUE, raf_.length());
+		channel_ = raf_.getChannel();
+		buffer_ = channel_.map(FileChannel.MapMode.READ_WRITE, 0, capacity_);
+		recover();
+	}
+
+	/**
+	 * Reads the spool settings the first time an application logs. If entries were left in the spool when the server
+	 * stopped, they start being written straight away
+	 *
+	 * @param config
+	 *            OpenLogConfig of the application logging
+	 */
+	static void configure(OpenLogConfig config) {
+		if (configured_) {
+			return;
+		}
+		synchronized (LogSpool.class) {
+			if (configured_) {
+				return;
+			}
+			configured_ = true;
+			if (!config.isSpool()) {
+				return;
+			}
+			file_ = new File(config.getSpoolDirectory(), FILE_NAME);
+			size_ = config.getSpoolSize() * 1024;
+			if (file_.exists()) {
+				final LogSpool spool = getInstance();
+				if (null != spool) {
+					spool.startReplayer();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return LogSpool, opening the file if it is not already open, or null if spooling is disabled or the file
+	 *         cannot be opened
+	 */
+	private static synchronized LogSpool getInstance() {
+		if (null == instance_ && null != file_) {
+			try {
+				instance_ = new LogSpool(file_, size_);
+			} catch (final Throwable t) {
+				OpenLogUtil.print("Could not open OpenLog spool " + file_.getAbsolutePath());
+				OpenLogUtil.debugPrint(t);
+				// don't try again on every entry
+				file_ = null;
+			}
+		}
+		return instance_;
+	}
+
+	/**
+	 * Adds a record to the spool, to be written when the log database can be opened again
+	 *
+	 * @param record
+	 *            LogRecord that could not be written
+	 * @return boolean true if the record was spooled
+	 */
+	static boolean spool(LogRecord record) {
+		// not written yet, so repeats can't be counted against it
+		LogDeduplicator.unsaved(record);
+		final LogSpool spool = getInstance();
+		if (null == spool) {
+			OpenLogStats.dropped(1);
+			return false;
+		}
+		try {
+			if (spool.append(LogRecordCodec.encode(record))) {
+				return true;
+			}
+			OpenLogUtil.print("OpenLog spool is full, could not log: " + record.getErrorMessage());
+		} catch (final Throwable t) {
+			OpenLogUtil.debugPrint(t);
+		}
+		OpenLogStats.dropped(1);
+		return false;
+	}
+
+	/**
+	 * Stops the replayer and closes the spool file, if it was opened. Called when the plugin is stopped.
+	 */
+	static void shutdown() {
+		LogSpool spool;
+		synchronized (LogSpool.class) {
+			spool = instance_;
+			instance_ = null;
+			configured_ = false;
+		}
+		if (null != spool) {
+			spool.close();
+		}
+	}
+
+	/**
+	 * Checks the header and every entry after a restart, discarding anything written partially
+	 */
+	private void recover() {
+		if (buffer_.getInt(0) != MAGIC || buffer_.getInt(4) != FORMAT) {
+			head_ = DATA_START;
+			tail_ = DATA_START;
+			buffer_.putInt(0, MAGIC);
+			buffer_.putInt(4, FORMAT);
+			writeHeader();
+			return;
+		}
+		head_ = buffer_.getInt(HEAD_POS);
+		tail_ = buffer_.getInt(TAIL_POS);
+		if (head_ < DATA_START || tail_ < head_ || tail_ > capacity_) {
+			OpenLogUtil.print("OpenLog spool header is corrupt, spooled entries have been discarded");
+			head_ = DATA_START;
+			tail_ = DATA_START;
+			writeHeader();
+			return;
+		}
+		int pos = head_;
+		while (pos < tail_) {
+			final int next = checkEntry(pos);
+			if (next < 0) {
+				OpenLogUtil.print("OpenLog spool entries from position " + pos
+						+ " failed their CRC check and have been discarded");
+				tail_ = pos;
+				writeHeader();
+				break;
+			}
+			pos = next;
+		}
+	}
+
+	/**
+	 * @param pos
+	 *            int position of an entry
+	 * @return int position of the next entry or -1 if this one is incomplete or corrupt
+	 */
+	private int checkEntry(int pos) {
+		if (pos + ENTRY_HEADER > tail_) {
+			return -1;
+		}
+		final int length = buffer_.getInt(pos);
+		if (length < 0 || length > tail_ - pos - ENTRY_HEADER) {
+			return -1;
+		}
+		if (crc(pos + ENTRY_HEADER, length) != buffer_.getInt(pos + 4)) {
+			return -1;
+		}
+		return pos + ENTRY_HEADER + length;
+	}
+
+	private int crc(int pos, int length) {
+		final byte[] data = new byte[length];
+		read(pos, data);
+		final CRC32 crc = new CRC32();
+		crc.update(data);
+		return (int) crc.getValue();
+	}
+
+	private void read(int pos, byte[] data) {
+		buffer_.position(pos);
+		buffer_.get(data);
+	}
+
+	private void writeHeader() {
+		buffer_.putInt(HEAD_POS, head_);
+		buffer_.putInt(TAIL_POS, tail_);
+		buffer_.force();
+	}
+
+	/**
+	 * @param data
+	 *            byte[] encoded record
+	 * @return boolean false if there isn't room in the spool
+	 */
+	synchronized boolean append(byte[] data) {
+		final int needed = ENTRY_HEADER + data.length;
+		if (tail_ + needed > capacity_) {
+			compact();
+			if (tail_ + needed > capacity_) {
+				return false;
+			}
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(data);
+		buffer_.putInt(tail_, data.length);
+		buffer_.putInt(tail_ + 4, (int) crc.getValue());
+		buffer_.position(tail_ + ENTRY_HEADER);
+		buffer_.put(data);
+		tail_ += needed;
+		// the header is updated last, so a crash before this leaves the entry unused
+		writeHeader();
+		startReplayer();
+		return true;
+	}
+
+	/**
+	 * Moves the entries still waiting to the start of the file, to make room for more
+	 */
+	private void compact() {
+		if (head_ == DATA_START) {
+			return;
+		}
+		final byte[] waiting = new byte[tail_ - head_];
+		read(head_, waiting);
+		buffer_.position(DATA_START);
+		buffer_.put(waiting);
+		head_ = DATA_START;
+		tail_ = DATA_START + waiting.length;
+		writeHeader();
+	}
+
+	/**
+	 * @return byte[] oldest entry or null if the spool is empty
+	 */
+	synchronized byte[] peek() {
+		if (head_ >= tail_) {
+			return null;
+		}
+		if (checkEntry(head_) < 0) {
+			// there are no markers to find the next good entry from, so drop the rest
+			OpenLogUtil.print("OpenLog spool entries failed their CRC check and have been discarded");
+			head_ = DATA_START;
+			tail_ = DATA_START;
+			writeHeader();
+			return null;
+		}
+		final byte[] data = new byte[buffer_.getInt(head_)];
+		read(head_ + ENTRY_HEADER, data);
+		return data;
+	}
+
+	/**
+	 * Removes the oldest entry, once it has been written
+	 */
+	synchronized void remove() {
+		if (head_ >= tail_) {
+			return;
+		}
+		head_ += ENTRY_HEADER + buffer_.getInt(head_);
+		if (head_ >= tail_) {
+			head_ = DATA_START;
+			tail_ = DATA_START;
+		}
+		writeHeader();
+	}
+
+	/**
+	 * Moves the oldest entry to the end of the spool, when its database still can't be written to. It is copied
+	 * before it is removed, so a crash in between can only leave it twice
+	 *
+	 * @return boolean false if there isn't room to copy it
+	 */
+	synchronized boolean requeue() {
+		final byte[] data = peek();
+		if (null == data || !append(data)) {
+			return false;
+		}
+		remove();
+		return true;
+	}
+
+	/**
+	 * @return int number of entries waiting to be written
+	 */
+	synchronized int count() {
+		int count = 0;
+		int pos = head_;
+		while (pos < tail_) {
+			pos += ENTRY_HEADER + buffer_.getInt(pos);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return boolean true if nothing is waiting to be written
+	 */
+	synchronized boolean isEmpty() {
+		return head_ >= tail_;
+	}
+
+	private synchronized void startReplayer() {
+		if (head_ < tail_ && (null == replayer_ || !replayer_.isAlive())) {
+			replayer_ = new Replayer();
+			replayer_.start();
+		}
+	}
+
+	/**
+	 * Called by the replayer when it finds the spool empty
+	 *
+	 * @return boolean true if the replayer should stop
+	 */
+	private synchronized boolean finishReplay() {
+		if (head_ < tail_) {
+			return false;
+		}
+		replayer_ = null;
+		return true;
+	}
+
+	private void close() {
+		Replayer replayer;
+		synchronized (this) {
+			replayer = replayer_;
+			replayer_ = null;
+		}
+		if (null != replayer) {
+			replayer.interrupt();
+		}
+		synchronized (this) {
+			try {
+				buffer_.force();
+				channel_.close();
+				raf_.close();
+			} catch (final Throwable t) {
+				OpenLogUtil.debugPrint(t);
+			}
+		}
+	}
+
+	/**
+	 * Goes through up to {@link #REPLAY_BATCH} spooled entries, oldest first. Entries whose log database still can't
+	 * be opened or written to are moved to the end, and the rest of the entries for that database in this pass
+	 * follow them without another attempt. Emails go to the {@link LogEmailDigest} when it is enabled, as they would
+	 * have done if they had not been spooled. Entries that can't be decoded are discarded and counted as dropped.
+	 *
+	 * @param session
+	 *            Session of the replayer thread
+	 * @return int number of entries written
+	 */
+	private int replay(Session session) {
+		int written = 0;
+		// each entry is looked at once, even if it is moved to the end
+		final int pass = Math.min(count(), REPLAY_BATCH);
+		final Set<String> failed = new HashSet<String>();
+		String target = null;
+		Database db = null;
+		LogDocumentWriter writer = null;
+		try {
+			for (int i = 0; i < pass; i++) {
+				final byte[] data = peek();
+				if (null == data) {
+					break;
+				}
+				LogRecord record;
+				try {
+					record = LogRecordCodec.decode(data);
+				} catch (final IOException e) {
+					// can never be written, so don't let it block the rest
+					OpenLogUtil.print("Spooled OpenLog entry could not be read and has been discarded");
+					OpenLogUtil.debugPrint(e);
+					OpenLogStats.dropped(1);
+					remove();
+					continue;
+				}
+				if (LogEmailDigest.isEnabled() && StringUtil.isNotEmpty(record.getLogEmail())) {
+					LogEmailDigest.add(record);
+					remove();
+					written++;
+					continue;
+				}
+				final String key = NsfLogSink.getTargetKey(record);
+				if (failed.contains(key)) {
+					if (!requeue()) {
+						break;
+					}
+					continue;
+				}
+				if (!key.equals(target)) {
+					if (null != writer) {
+						writer.recycle();
+						writer = null;
+					}
+					if (null != db) {
+						db.recycle();
+					}
+					target = key;
+					db = NsfLogSink.getTargetDb(session, record);
+					if (null == db) {
+						target = null;
+						failed.add(key);
+						if (!requeue()) {
+							break;
+						}
+						continue;
+					}
+					writer = new LogDocumentWriter(db);
+				}
+				if (!writer.write(record, null)) {
+					failed.add(key);
+					if (!requeue()) {
+						break;
+					}
+					continue;
+				}
+				remove();
+				written++;
+				// the database is back, so log calls can stop spooling
+				LogCircuitBreaker.get(key).recordSuccess();
+			}
+		} catch (final Throwable t) {
+			OpenLogUtil.debugPrint(t);
+		} finally {
+			try {
+				if (null != writer) {
+					writer.recycle();
+				}
+				if (null != db) {
+					db.recycle();
+				}
+			} catch (final Exception e) {
+				// nothing more we can do
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Replayer thread, only running while there are entries in the spool
+	 */
+	private class Replayer extends NotesThread {
+
+		Replayer() {
+			super();
+			setName("OpenLog Spool Replayer");
+			setDaemon(true);
+		}
+
+		@Override
+		public void runNotes() {
+			Session session = null;
+			// the log database has only just failed, so give it time to come back
+			long wait = REPLAY_INTERVAL;
+			try {
+				while (!finishReplay()) {
+					Thread.sleep(wait);
+					try {
+						if (null == session || !session.isValid()) {
+							session = NotesFactory.createSession();
+						}
+					} catch (final Throwable t) {
+						OpenLogUtil.debugPrint(t);
+						continue;
+					}
+					final int written = replay(session);
+					if (written > 0) {
+						OpenLogUtil.print(written + " spooled OpenLog entries written");
+					}
+					// carry straight on while the database is taking entries
+					wait = (written == REPLAY_BATCH) ? 0 : REPLAY_INTERVAL;
+				}
+			} catch (final InterruptedException e) {
+				// shutting down
+			} finally {
+				try {
+					if (null != session) {
+						session.recycle();
+					}
+				} catch (final Exception e2) {
+					// nothing more we can do
+				}
+			}
+		}
+	}
+
+}
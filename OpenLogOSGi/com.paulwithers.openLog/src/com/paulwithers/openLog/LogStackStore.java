@@ -0,0 +1,215 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import lotus.domino.Database;
+import lotus.domino.DateTime;
+import lotus.domino.Document;
+import lotus.domino.NotesException;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Stores each unique stack trace once, in a LogStack document in the log database, instead of on every log
+ *        document. Enabled by setting xsp.openlog.stackDocuments=true, not used when logging by email.<br>
+ *        <br>
+ *        The stack is keyed by an MD5 hash of its frame lines, which is also used as the UNID of the LogStack
+ *        document, so it can be found without a view. An existing LogStack document is only used if its frames match,
+ *        otherwise the full stack trace is written on the log document. The log document keeps only the exception / "Caused by" lines
+ *        in LogStackTrace, plus LogStackHash and LogStackLink, a Notes URL to the LogStack document. An LRU cache of
+ *        the stacks recently written lets the writer skip even the UNID lookup for stacks it already knows about.
+ *
+ */
+class LogStackStore {
+	static final String STACK_FORM = "LogStack";
+	private static final int CACHE_SIZE = 2000;
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	// stacks written, with the hashCode of their frames as a second check against a different stack with the same hash
+	private static final Map<String, Integer> known_ = new LinkedHashMap<String, Integer>(256, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private LogStackStore() {
+
+	}
+
+	/**
+	 * @param line
+	 *            String LogStackTrace line
+	 * @return boolean true if the line is a stack frame rather than an exception message
+	 */
+	private static boolean isFrame(String line) {
+		return line.startsWith("at ") || line.startsWith("... ");
+	}
+
+	/**
+	 * Hashes the frame lines of a stack trace, ignoring the messages so the same stack with different messages is
+	 * only stored once
+	 *
+	 * @param stackTrace
+	 *            List of LogStackTrace lines
+	 * @return String 32 character hex MD5 hash, usable as a UNID, or null if it can't be computed
+	 */
+	static String hash(List<String> stackTrace) {
+		try {
+			final MessageDigest md5 = MessageDigest.getInstance("MD5");
+			for (final String line : stackTrace) {
+				if (isFrame(line)) {
+					md5.update(line.getBytes("UTF-8"));
+					md5.update((byte) '\n');
+				}
+			}
+			final byte[] digest = md5.digest();
+			final StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (final byte b : digest) {
+				hex.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+			}
+			return hex.toString();
+		} catch (final Exception e) {
+			// MD5 and UTF-8 are always available
+			OpenLogUtil.debugPrint(e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param stackTrace
+	 *            List of LogStackTrace lines
+	 * @return List of the frame lines only, which are what the hash is computed from
+	 */
+	private static List<String> getFrames(List<?> stackTrace) {
+		final List<String> frames = new ArrayList<String>(stackTrace.size());
+		for (final Object line : stackTrace) {
+			if (null != line && isFrame(line.toString())) {
+				frames.add(line.toString());
+			}
+		}
+		return frames;
+	}
+
+	/**
+	 * @param stackTrace
+	 *            List of LogStackTrace lines
+	 * @return Vector of the exception and "Caused by" lines only, to write on the log document
+	 */
+	static Vector<String> summarise(List<String> stackTrace) {
+		final Vector<String> v = new Vector<String>();
+		for (final String line : stackTrace) {
+			if (!isFrame(line)) {
+				v.addElement(line);
+			}
+		}
+		return v;
+	}
+
+	/**
+	 * @param db
+	 *            Database the LogStack document is in
+	 * @param hash
+	 *            String hash of the stack
+	 * @return String Notes URL opening the LogStack document
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 */
+	static String getLink(Database db, String hash) throws NotesException {
+		return "notes:///" + db.getReplicaID() + "/0/" + hash;
+	}
+
+	/**
+	 * Makes sure a LogStack document exists for the stack trace
+	 *
+	 * @param db
+	 *            Database to store the stack in
+	 * @param hash
+	 *            String hash of the stack, from {@link #hash(List)}
+	 * @param stackTrace
+	 *            List of LogStackTrace lines
+	 * @param eventTime
+	 *            DateTime the stack was first seen
+	 * @return boolean true if the LogStack document exists for this stack or has been created, false if it could not
+	 *         be created or a different stack has the same hash
+	 */
+	static boolean store(Database db, String hash, List<String> stackTrace, DateTime eventTime) {
+		Document stackDoc = null;
+		try {
+			final String key = db.getReplicaID() + hash;
+			final List<String> frames = getFrames(stackTrace);
+			final Integer framesHash = Integer.valueOf(frames.hashCode());
+			synchronized (known_) {
+				final Integer known = known_.get(key);
+				if (null != known) {
+					return known.equals(framesHash);
+				}
+			}
+			try {
+				stackDoc = db.getDocumentByUNID(hash);
+			} catch (final NotesException e) {
+				// not stored yet
+			}
+			if (null != stackDoc) {
+				if (!frames.equals(getFrames(stackDoc.getItemValue("LogStackTrace")))) {
+					OpenLogUtil.print("OpenLog stack hash " + hash + " is already used by a different stack trace");
+					return false;
+				}
+			} else {
+				stackDoc = db.createDocument();
+				stackDoc.setUniversalID(hash);
+				stackDoc.replaceItemValue("Form", STACK_FORM);
+				stackDoc.replaceItemValue("LogStackHash", hash);
+				stackDoc.replaceItemValue("LogStackTrace", LogDocumentWriter.toVector(stackTrace));
+				stackDoc.replaceItemValue("LogFirstSeen", eventTime);
+				// make sure Depositor-level users can add documents too
+				stackDoc.appendItemValue("$PublicAccess", "1");
+				if (!stackDoc.save(true)) {
+					return false;
+				}
+			}
+			synchronized (known_) {
+				known_.put(key, framesHash);
+			}
+			return true;
+		} catch (final Throwable t) {
+			OpenLogUtil.debugPrint(t);
+			return false;
+		} finally {
+			try {
+				if (null != stackDoc) {
+					stackDoc.recycle();
+				}
+			} catch (final Exception e) {
+				// NTF why the hell does .recycle() throw an Exception?
+			}
+		}
+	}
+
+}
@@ -0,0 +1,512 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.commons.util.StringUtil;
+
+import lotus.domino.Database;
+import lotus.domino.Document;
+import lotus.domino.NotesException;
+import lotus.domino.NotesFactory;
+import lotus.domino.NotesThread;
+import lotus.domino.Session;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        The "nsf" {@link LogSink}, writing log documents to the OpenLog database, or memos to mail.box when
+ *        xsp.openlog.email is set, from the {@link OpenLogWriter} threads. Each thread is initialised for Notes the
+ *        first time it writes and keeps its own Session, re-created if it becomes invalid, until
+ *        {@link #release()}.<br>
+ *        <br>
+ *        Each batch is grouped by target database, so the database is opened once per group and the DateTime objects
+ *        are reused for every document in it. Records for a database that can't be opened go to the {@link LogSpool}.
+ *        {@link #flush()} updates the repeat counts of de-duplicated entries.<br>
+ *        <br>
+ *        The sink registered by the {@link Activator} is used by the writer threads. When logging synchronously,
+ *        OpenLogItem passes {@link LogSinks#writeDirect(List, LogSink)} an instance created with the request's
+ *        Sessions instead, which tries the current user first and then the signer, as before 8.1.0, and only updates
+ *        the repeat counts for the log database of the request. That database isn't recycled, the Session may have
+ *        returned the handle the page itself is using, e.g. for [CURRENT]. As there are no writer threads to do it,
+ *        repeat counts for every database are also updated by a background thread, every
+ *        {@link LogDeduplicator#UPDATE_INTERVAL} milliseconds while repeats are being counted and when the plugin is
+ *        stopped.
+ *
+ */
+class NsfLogSink implements LogSink {
+	private static Updater updater_;
+	private final ThreadLocal<Boolean> initialised_ = new ThreadLocal<Boolean>();
+	private final ThreadLocal<Session> session_ = new ThreadLocal<Session>();
+	private final Session requestSession_;
+	private final Session signerSession_;
+	private final Session creatorSession_;
+	private final Document errDoc_;
+	private final String server_;
+	private final String dbPath_;
+
+	/**
+	 * Sink for the writer threads, each creating its own Session
+	 */
+	NsfLogSink() {
+		this(null, null, null, null, null, null);
+	}
+
+	/**
+	 * Sink for writing on a request thread
+	 *
+	 * @param session
+	 *            Session of the current user
+	 * @param signer
+	 *            Session of the signer, used if the current user can't open the database
+	 * @param creator
+	 *            Session creating the log database from xsp.openlog.templateFilepath, the signer with full access, or
+	 *            null to use the Session opening it
+	 * @param errDoc
+	 *            Document every record relates to or null
+	 * @param server
+	 *            String server of the log database, whose repeat counts are updated by {@link #flush()}
+	 * @param dbPath
+	 *            String filepath of the log database
+	 */
+	NsfLogSink(Session session, Session signer, Session creator, Document errDoc, String server, String dbPath) {
+		requestSession_ = session;
+		signerSession_ = signer;
+		creatorSession_ = creator;
+		errDoc_ = errDoc;
+		server_ = server;
+		dbPath_ = dbPath;
+	}
+
+	public String getName() {
+		return LogSinks.NSF;
+	}
+
+	public boolean accepts(LogRecord record) {
+		return true;
+	}
+
+	public int write(List<LogRecord> records) throws NotesException {
+		int saved = 0;
+		List<LogRecord> toWrite = records;
+		if (LogEmailDigest.isEnabled()) {
+			toWrite = new ArrayList<LogRecord>(records.size());
+			for (final LogRecord record : records) {
+				if (StringUtil.isEmpty(record.getLogEmail())) {
+					toWrite.add(record);
+				} else if (LogEmailDigest.add(record)) {
+					saved++;
+				}
+			}
+			if (toWrite.isEmpty()) {
+				return saved;
+			}
+		}
+		final Session session = getSession();
+		for (final List<LogRecord> group : groupByTarget(toWrite).values()) {
+			try {
+				saved += write(session, group);
+			} catch (final Throwable t) {
+				for (final LogRecord record : group) {
+					LogDeduplicator.unsaved(record);
+				}
+				OpenLogStats.dropped(group.size());
+				OpenLogUtil.print(group.size() + " OpenLog entries could not be written");
+				OpenLogUtil.debugPrint(t);
+			}
+		}
+		return saved;
+	}
+
+	public void flush() throws NotesException {
+		if (null != requestSession_) {
+			final List<LogDeduplicator.Occurrence> due = LogDeduplicator.getDue(server_, dbPath_);
+			if (!due.isEmpty()) {
+				update(null == signerSession_ ? requestSession_ : signerSession_, due);
+			}
+			if (!LogDeduplicator.isEmpty()) {
+				startUpdater();
+			}
+			return;
+		}
+		final List<LogDeduplicator.Occurrence> due = LogDeduplicator.getDue(false);
+		if (!due.isEmpty()) {
+			update(getSession(), due);
+		}
+	}
+
+	public void release() {
+		final Session session = session_.get();
+		try {
+			// write the final counts of any repeats
+			if (null != session && session.isValid()) {
+				update(session, LogDeduplicator.getDue(true));
+			}
+		} catch (final Throwable t) {
+			OpenLogUtil.debugPrint(t);
+		} finally {
+			try {
+				if (null != session) {
+					session.recycle();
+				}
+			} catch (final Exception e2) {
+				// nothing more we can do
+			}
+			session_.remove();
+			if (null != initialised_.get()) {
+				initialised_.remove();
+				NotesThread.stermThread();
+			}
+		}
+	}
+
+	public void close() {
+		// Sessions are released by each writer thread
+	}
+
+	/**
+	 * Stops the thread updating repeat counts for synchronous logging, after it has written the final counts. Called
+	 * when the plugin is stopped.
+	 */
+	static void shutdown() {
+		Updater updater;
+		synchronized (NsfLogSink.class) {
+			updater = updater_;
+			updater_ = null;
+		}
+		if (null != updater) {
+			updater.interrupt();
+			try {
+				updater.join(10000);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static synchronized void startUpdater() {
+		if (null == updater_ || !updater_.isAlive()) {
+			updater_ = new Updater();
+			updater_.start();
+		}
+	}
+
+	/**
+	 * Called by the updater when no repeats are being counted
+	 *
+	 * @return boolean true if the updater should stop
+	 */
+	private static synchronized boolean finishUpdating(Updater updater) {
+		if (!LogDeduplicator.isEmpty() || updater != updater_) {
+			return updater != updater_;
+		}
+		updater_ = null;
+		return true;
+	}
+
+	/**
+	 * @return Session of the request, or for the calling writer thread, initialising the thread for Notes if needed
+	 * @throws NotesException
+	 *             if the Session cannot be created
+	 */
+	private Session getSession() throws NotesException {
+		if (null != requestSession_) {
+			return requestSession_;
+		}
+		Session session = session_.get();
+		if (null != session && session.isValid()) {
+			return session;
+		}
+		if (null == initialised_.get()) {
+			NotesThread.sinitThread();
+			initialised_.set(Boolean.TRUE);
+		}
+		if (null != session) {
+			try {
+				session.recycle();
+			} catch (final Exception e) {
+				// see above
+			}
+			session_.remove();
+		}
+		session = NotesFactory.createSession();
+		session_.set(session);
+		return session;
+	}
+
+	/**
+	 * Groups the records by the database they are to be written to, keeping the order within each database
+	 *
+	 * @param batch
+	 *            List of records
+	 * @return Map of records for each target database
+	 */
+	private static Map<String, List<LogRecord>> groupByTarget(List<LogRecord> batch) {
+		final Map<String, List<LogRecord>> groups = new LinkedHashMap<String, List<LogRecord>>();
+		for (final LogRecord record : batch) {
+			final String key = getTargetKey(record);
+			List<LogRecord> group = groups.get(key);
+			if (null == group) {
+				group = new ArrayList<LogRecord>();
+				groups.put(key, group);
+			}
+			group.add(record);
+		}
+		return groups;
+	}
+
+	/**
+	 * @param record
+	 *            LogRecord to be written
+	 * @return String key identifying the database the record is to be written to
+	 */
+	static String getTargetKey(LogRecord record) {
+		if (StringUtil.isEmpty(record.getLogEmail())) {
+			return record.getFromServer() + "!!" + record.getLogDbName();
+		}
+		return record.getFromServer() + "!!mail.box";
+	}
+
+	/**
+	 * Opens the target database of a record, which is the same for every record in its group
+	 *
+	 * @param session
+	 *            Session of the writer thread
+	 * @param record
+	 *            LogRecord to get the target database from
+	 * @return Database log database or mail.box or null if it cannot be opened
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 */
+	static Database getTargetDb(Session session, LogRecord record) throws NotesException {
+		return getTargetDb(session, session, record);
+	}
+
+	/**
+	 * @param session
+	 *            Session to open the database with
+	 * @param creator
+	 *            Session to create the log database from xsp.openlog.templateFilepath with if it doesn't exist
+	 * @param record
+	 *            LogRecord to get the target database from
+	 * @return Database log database or mail.box or null if it cannot be opened
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 * @see #getTargetDb(Session, LogRecord)
+	 */
+	private static Database getTargetDb(Session session, Session creator, LogRecord record) throws NotesException {
+		Database db = null;
+		if (StringUtil.isEmpty(record.getLogEmail())) {
+			db = session.getDatabase(record.getFromServer(), record.getLogDbName(), false);
+			if (null == db && StringUtil.isNotEmpty(record.getLogTemplatePath())) {
+				final Database templateDb = creator.getDatabase(record.getFromServer(), record.getLogTemplatePath(),
+						false);
+				if (null != templateDb) {
+					db = templateDb.createCopy(record.getFromServer(), record.getLogDbName());
+					templateDb.recycle();
+				}
+			}
+		} else {
+			db = session.getDatabase(record.getFromServer(), "mail.box", false);
+		}
+		if (null == db) {
+			OpenLogUtil.print("Could not retrieve database at path " + record.getLogDbName());
+		} else if (!db.isOpen()) {
+			OpenLogUtil.print(session.getEffectiveUserName() + " cannot open database at path "
+					+ record.getLogDbName()
+					+ ", if you believe the ACL is correct, the database may have become corrupt");
+			db.recycle();
+			db = null;
+		}
+		return db;
+	}
+
+	/**
+	 * Writes a group of records to the same target database
+	 *
+	 * @param session
+	 *            Session of the writer thread or current user
+	 * @param group
+	 *            List of records for the same target database
+	 * @return int number of documents saved or spooled, to be written once the database is available again
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 */
+	private int write(Session session, List<LogRecord> group) throws NotesException {
+		int saved = 0;
+		final LogCircuitBreaker breaker = LogCircuitBreaker.get(getTargetKey(group.get(0)));
+		final Session creator = null == creatorSession_ ? session : creatorSession_;
+		Database db = null;
+		if (breaker.allowRequest()) {
+			try {
+				if (null == signerSession_) {
+					db = getTargetDb(session, creator, group.get(0));
+				} else {
+					try {
+						db = getTargetDb(session, creator, group.get(0));
+					} catch (final NotesException e) {
+						OpenLogUtil.debugPrint(e);
+					}
+					if (null == db) {
+						db = getTargetDb(signerSession_, creator, group.get(0));
+					}
+				}
+			} finally {
+				if (null == db) {
+					breaker.recordFailure();
+				}
+			}
+		}
+		if (null == db) {
+			int spooled = 0;
+			for (final LogRecord record : group) {
+				if (LogSpool.spool(record)) {
+					spooled++;
+				}
+			}
+			OpenLogUtil.print(group.size() + " OpenLog entries could not be written, " + spooled + " spooled");
+			return spooled;
+		}
+		final LogDocumentWriter writer = new LogDocumentWriter(db);
+		try {
+			for (final LogRecord record : group) {
+				if (writer.write(record, errDoc_)) {
+					saved++;
+				} else {
+					OpenLogStats.dropped(1);
+					OpenLogUtil.print("Could not log: " + record.getErrorMessage());
+				}
+			}
+		} finally {
+			writer.recycle();
+			if (null == requestSession_) {
+				db.recycle();
+			}
+		}
+		// the database opened, so only count it as failing when no save in a batch succeeded; a single record
+		// that cannot be saved, such as one with an oversized value, says nothing about the database
+		if (0 == saved && group.size() > 1) {
+			breaker.recordFailure();
+		} else {
+			breaker.recordSuccess();
+		}
+		return saved;
+	}
+
+	/**
+	 * Updates the first log document of each fingerprint with the repeats counted since it was last updated
+	 *
+	 * @param session
+	 *            Session of the writer thread
+	 * @param due
+	 *            List of occurrences to update
+	 */
+	private static void update(Session session, List<LogDeduplicator.Occurrence> due) {
+		final Map<String, List<LogDeduplicator.Occurrence>> groups = new LinkedHashMap<String, List<LogDeduplicator.Occurrence>>();
+		for (final LogDeduplicator.Occurrence occurrence : due) {
+			final String key = occurrence.getServer() + "!!" + occurrence.getDbPath();
+			List<LogDeduplicator.Occurrence> group = groups.get(key);
+			if (null == group) {
+				group = new ArrayList<LogDeduplicator.Occurrence>();
+				groups.put(key, group);
+			}
+			group.add(occurrence);
+		}
+		for (final List<LogDeduplicator.Occurrence> group : groups.values()) {
+			Database db = null;
+			LogDocumentWriter writer = null;
+			try {
+				db = session.getDatabase(group.get(0).getServer(), group.get(0).getDbPath(), false);
+				if (null == db || !db.isOpen()) {
+					continue;
+				}
+				writer = new LogDocumentWriter(db);
+				for (final LogDeduplicator.Occurrence occurrence : group) {
+					writer.update(occurrence);
+				}
+			} catch (final Throwable t) {
+				OpenLogUtil.debugPrint(t);
+			} finally {
+				try {
+					if (null != writer) {
+						writer.recycle();
+					}
+					if (null != db) {
+						db.recycle();
+					}
+				} catch (final Exception e) {
+					// nothing more we can do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updater thread for synchronous logging, only running while repeats are being counted
+	 */
+	private static class Updater extends NotesThread {
+
+		Updater() {
+			super();
+			setName("OpenLog Repeat Updater");
+			setDaemon(true);
+		}
+
+		@Override
+		public void runNotes() {
+			Session session = null;
+			boolean stopping = false;
+			try {
+				while (!stopping && !finishUpdating(this)) {
+					try {
+						Thread.sleep(LogDeduplicator.UPDATE_INTERVAL);
+					} catch (final InterruptedException e) {
+						// shutting down, write the final counts
+						stopping = true;
+					}
+					try {
+						final List<LogDeduplicator.Occurrence> due = LogDeduplicator.getDue(stopping);
+						if (!due.isEmpty()) {
+							if (null == session || !session.isValid()) {
+								session = NotesFactory.createSession();
+							}
+							update(session, due);
+						}
+					} catch (final Throwable t) {
+						OpenLogUtil.debugPrint(t);
+					}
+				}
+			} finally {
+				try {
+					if (null != session) {
+						session.recycle();
+					}
+				} catch (final Exception e2) {
+					// nothing more we can do
+				}
+			}
+		}
+	}
+
+}
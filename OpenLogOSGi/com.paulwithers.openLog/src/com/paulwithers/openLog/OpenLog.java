@@ -0,0 +1,238 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import com.ibm.commons.util.StringUtil;
+import com.ibm.xsp.extlib.util.ExtLibUtil;
+import com.paulwithers.openLog.OpenLogItem.LogType;
+
+import lotus.domino.Database;
+import lotus.domino.Document;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Fluent entry point for logging from Java, without the stateful setters of OpenLogItem:<br>
+ *        <br>
+ *        <code>OpenLog.error(e).message("Could not save").level(Level.SEVERE).doc(unid).field("orderId", id).submit();</code>
+ *        <br>
+ *        <br>
+ *        Each {@link Builder} creates its own {@link LogRecord}. {@link Builder#submit()} always queues the record for
+ *        an {@link OpenLogWriter} thread, whatever xsp.openlog.async is set to, so no documents are opened or saved on
+ *        the caller's thread.
+ *
+ */
+public final class OpenLog {
+
+	private OpenLog() {
+
+	}
+
+	/**
+	 * @param ee
+	 *            Throwable holding the error
+	 * @return Builder for an error, logged at WARNING unless {@link Builder#level(Level)} is called
+	 */
+	public static Builder error(Throwable ee) {
+		return new Builder(LogType.TYPE_ERROR, ee, Level.WARNING);
+	}
+
+	/**
+	 * @param message
+	 *            String message to log
+	 * @return Builder for an event, logged at INFO unless {@link Builder#level(Level)} is called
+	 */
+	public static Builder event(String message) {
+		return new Builder(LogType.TYPE_EVENT, createBase(), Level.INFO).message(message);
+	}
+
+	/**
+	 * @return Throwable whose stack trace starts at the caller of OpenLog, for LogFromMethod and LogErrorLine
+	 */
+	private static Throwable createBase() {
+		final Throwable base = new Throwable("");
+		final StackTraceElement[] stack = base.getStackTrace();
+		int skip = 0;
+		while (skip < stack.length && (OpenLog.class.getName().equals(stack[skip].getClassName()) || stack[skip]
+				.getClassName().startsWith(Builder.class.getName()))) {
+			skip++;
+		}
+		if (skip > 0 && skip < stack.length) {
+			final StackTraceElement[] caller = new StackTraceElement[stack.length - skip];
+			System.arraycopy(stack, skip, caller, 0, caller.length);
+			base.setStackTrace(caller);
+		}
+		return base;
+	}
+
+	/**
+	 * Collects the details of a single error / event. Not thread-safe, create a new Builder for each log entry
+	 */
+	public static final class Builder {
+		private final LogType type_;
+		private final Throwable base_;
+		private String message_ = "";
+		private Level severity_;
+		private String docServer_;
+		private String docFilePath_;
+		private String docUnid_;
+		private String docNoteId_;
+		private final Map<String, String> fields_ = new LinkedHashMap<String, String>();
+
+		private Builder(LogType type, Throwable base, Level severity) {
+			type_ = type;
+			base_ = (null == base) ? createBase() : base;
+			severity_ = severity;
+		}
+
+		/**
+		 * @param message
+		 *            String message to log, for errors the Throwable's message is used if not set
+		 * @return this Builder
+		 */
+		public Builder message(String message) {
+			message_ = (null == message) ? "" : message;
+			return this;
+		}
+
+		/**
+		 * @param severity
+		 *            Level to log at
+		 * @return this Builder
+		 */
+		public Builder level(Level severity) {
+			if (null != severity) {
+				severity_ = severity;
+			}
+			return this;
+		}
+
+		/**
+		 * @param unid
+		 *            String UNID of a document in the current database the error / event relates to
+		 * @return this Builder
+		 */
+		public Builder doc(String unid) {
+			docUnid_ = unid;
+			docServer_ = null;
+			docFilePath_ = null;
+			docNoteId_ = null;
+			return this;
+		}
+
+		/**
+		 * @param doc
+		 *            Document the error / event relates to, its details are read straight away so it can be recycled
+		 *            before calling {@link #submit()}
+		 * @return this Builder
+		 */
+		public Builder doc(Document doc) {
+			if (null != doc) {
+				try {
+					final Database docDb = doc.getParentDatabase();
+					docServer_ = docDb.getServer();
+					docFilePath_ = docDb.getFilePath();
+					docUnid_ = doc.getUniversalID();
+					docNoteId_ = doc.getNoteID();
+				} catch (final Throwable t) {
+					OpenLogUtil.debugPrint(t);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Adds a structured field, written to the LogFields item as "key=value"
+		 *
+		 * @param key
+		 *            String field name
+		 * @param value
+		 *            Object value, converted with String.valueOf
+		 * @return this Builder
+		 */
+		public Builder field(String key, Object value) {
+			if (StringUtil.isNotEmpty(key)) {
+				fields_.put(key, String.valueOf(value));
+			}
+			return this;
+		}
+
+		/**
+		 * Creates the LogRecord and queues it to be written. Must be called on the request thread, because the page,
+		 * user and database are read from the XPages context
+		 *
+		 * @return boolean true if the record was queued. False if it was not: held until the end of the request (see
+		 *         xsp.openlog.tailLevel), sampled out, a repeat within xsp.openlog.dedupWindow, or the queue was full
+		 */
+		public boolean submit() {
+			for (final StackTraceElement elem : base_.getStackTrace()) {
+				if (elem.getClassName().equals(OpenLogItem.class.getName())) {
+					// we are by definition in a loop
+					OpenLogUtil.print(base_.toString());
+					OpenLogUtil.debugPrint(base_);
+					return false;
+				}
+			}
+			if (LogType.TYPE_EVENT == type_ && RequestTracker.get().capture(severity_, message_)) {
+				// held until the end of the request, see xsp.openlog.tailLevel
+				return false;
+			}
+			try {
+				final OpenLogItem oli = OpenLogUtil.getOpenLogItem();
+				// sampling and the record read the settings of the current database
+				oli.checkCurrentDatabase();
+				final double sampleWeight = oli.getSampleWeight(severity_, type_.getValue());
+				if (sampleWeight == 0) {
+					// sampled out, deliberately not logged
+					return false;
+				}
+
+				String message = message_;
+				if ("".equals(message)) {
+					message = (null == base_.getMessage()) ? base_.getClass().getCanonicalName() : base_.getMessage();
+				}
+				final LogRecord record = oli.createLogRecord(base_, message, severity_, type_.getValue(), null);
+				record.setSampleWeight(sampleWeight);
+				if (null != docUnid_) {
+					if (null == docServer_) {
+						final Database currDb = ExtLibUtil.getCurrentDatabase();
+						docServer_ = currDb.getServer();
+						docFilePath_ = currDb.getFilePath();
+					}
+					record.setDoc(docServer_, docFilePath_, docUnid_, docNoteId_);
+				}
+				if (!fields_.isEmpty()) {
+					record.setFields(fields_);
+				}
+				// repeats aren't queued, so don't count them
+				return oli.writeToLog(Collections.singletonList(record), null, true, false) == 1;
+			} catch (final Throwable t) {
+				OpenLogUtil.debugPrint(t);
+				return false;
+			}
+		}
+	}
+
+}
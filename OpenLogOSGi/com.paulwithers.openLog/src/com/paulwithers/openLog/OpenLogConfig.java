@@ -0,0 +1,659 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import com.ibm.commons.util.StringUtil;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Immutable snapshot of the OpenLog settings for an application. Every setting is read once, via
+ *        {@link OpenLogUtil#getXspProperty(String, String)}, and the snapshot is stored in applicationScope. A new
+ *        snapshot is loaded when the application is reloaded, which happens when xsp.properties changes, or when
+ *        xsp.openlog.configRefresh seconds have elapsed (default 300), so notes.ini changes are picked up.<br>
+ *        <br>
+ *        The snapshot can only be retrieved on a request thread, unless it has been fixed with
+ *        {@link #setCurrent(OpenLogConfig)}, in which case no XPages classes are used. Call {@link #invalidate()} to
+ *        force the settings to be read again on the next call.
+ *
+ */
+public class OpenLogConfig implements Serializable, LogSettings {
+	private static final long serialVersionUID = 1L;
+	private static final String SCOPE_KEY = "openLogConfig";
+	private static volatile OpenLogConfig fixed_;
+
+	private final transient Map<String, String> properties;
+
+	private final long expires;
+	private final String logDbName;
+	private final int debugLevel;
+	private final boolean includeQueryString;
+	private final boolean suppressEventStack;
+	private final boolean suppressEventControl;
+	private final boolean displayError;
+	private final String genericErrorMessage;
+	private final String logEmail;
+	private final String logExpireDate;
+	private final String logTemplatePath;
+	private final boolean async;
+	private final int asyncQueueSize;
+	private final int asyncThreads;
+	private final int asyncShutdownTimeout;
+	private final int asyncBatchSize;
+	private final int asyncFlushInterval;
+	private final int dedupWindow;
+	private final Map<String, Double> sampleRates = new HashMap<String, Double>();
+	private final double eventRateLimit;
+	private final boolean eventRateLimitByDatabase;
+	private final int stackMaxDepth;
+	private final int stackMaxCauses;
+	private final boolean stackDocuments;
+	private final int securityCacheTtl;
+	private final boolean spool;
+	private final String spoolDirectory;
+	private final int spoolSize;
+	private final int breakerFailures;
+	private final int breakerCooldown;
+	private final int emailDigest;
+	private final int emailDigestMaxGroups;
+	private final int emailDigestMaxStacks;
+	private final int emailDigestMaxSize;
+	private final int payloadThreshold;
+	private final String[] sinks;
+	private final String fileDirectory;
+	private final String fileName;
+	private final int fileMaxSize;
+	private final int fileRollInterval;
+	private final int fileFsyncInterval;
+	private final boolean fileGzip;
+	private final int slowRequest;
+	private final int slowPhase;
+	private final int errorHolderCapacity;
+	private final Level tailLevel;
+	private final int tailEvents;
+
+	private OpenLogConfig() {
+		this(null);
+	}
+
+	/**
+	 * Loads the settings from a Map instead of xsp.properties and notes.ini, for use outside an XPages application,
+	 * see {@link #setCurrent(OpenLogConfig)}
+	 *
+	 * @param properties
+	 *            Map of xsp.openlog settings and notes.ini variables, or null to read them from the application
+	 */
+	OpenLogConfig(Map<String, String> properties) {
+		this.properties = properties;
+		logDbName = getProperty("xsp.openlog.filepath", "OpenLog.nsf");
+		debugLevel = getInt("xsp.openlog.debugLevel", 2, 0);
+		includeQueryString = "true".equalsIgnoreCase(getProperty("xsp.openlog.includeQueryString",
+				"false"));
+		final String suppressStack = getProperty("xsp.openlog.suppressEventStack", "false");
+		suppressEventStack = StringUtil.isEmpty(suppressStack) || !"false".equalsIgnoreCase(suppressStack);
+		suppressEventControl = !"".equals(getProperty("xsp.openlog.suppressEventControl", ""));
+		displayError = !"false".equalsIgnoreCase(getProperty("xsp.openlog.displayError", "true"));
+		genericErrorMessage = getProperty("xsp.openlog.genericErrorMessage", "");
+		logEmail = getProperty("xsp.openlog.email", "");
+		logExpireDate = getProperty("xsp.openlog.expireDate", "");
+		logTemplatePath = getProperty("xsp.openlog.templateFilepath", "");
+		async = "true".equalsIgnoreCase(getProperty("xsp.openlog.async", "false"));
+		asyncQueueSize = getInt("xsp.openlog.async.queueSize", 1000, 1);
+		asyncThreads = getInt("xsp.openlog.async.threads", 1, 1);
+		asyncShutdownTimeout = getInt("xsp.openlog.async.shutdownTimeout", 10000, 0);
+		asyncBatchSize = getInt("xsp.openlog.async.batchSize", 50, 1);
+		asyncFlushInterval = getInt("xsp.openlog.async.flushInterval", 500, 1);
+		dedupWindow = getInt("xsp.openlog.dedupWindow", 0, 0);
+		for (final Level level : new Level[] { Level.INFO, Level.CONFIG, Level.FINE, Level.FINER, Level.FINEST }) {
+			final String levelName = level.getName();
+			sampleRates.put(levelName, getDouble("xsp.openlog.sampleRate." + levelName.toLowerCase(), 1));
+		}
+		eventRateLimit = getDouble("xsp.openlog.eventRateLimit", 0);
+		eventRateLimitByDatabase = "database".equalsIgnoreCase(getProperty(
+				"xsp.openlog.eventRateLimitBy", "page"));
+		stackMaxDepth = getInt("xsp.openlog.stackMaxDepth", 0, 0);
+		stackMaxCauses = getInt("xsp.openlog.stackMaxCauses", 0, 0);
+		stackDocuments = "true".equalsIgnoreCase(getProperty("xsp.openlog.stackDocuments", "false"));
+		securityCacheTtl = getInt("xsp.openlog.securityCacheTtl", 60, 0);
+		spool = !"false".equalsIgnoreCase(getProperty("xsp.openlog.spool", "true"));
+		final String spoolDir = getProperty("xsp.openlog.spool.directory", "");
+		spoolDirectory = StringUtil.isNotEmpty(spoolDir) ? spoolDir : new File(getIniVar("Directory"), "openlog")
+				.getPath();
+		spoolSize = getInt("xsp.openlog.spool.size", 16384, 64);
+		breakerFailures = getInt("xsp.openlog.breaker.failures", 3, 1);
+		breakerCooldown = getInt("xsp.openlog.breaker.cooldown", 60, 1);
+		emailDigest = getInt("xsp.openlog.email.digest", 0, 0);
+		emailDigestMaxGroups = getInt("xsp.openlog.email.digestMaxGroups", 50, 1);
+		emailDigestMaxStacks = getInt("xsp.openlog.email.digestMaxStacks", 3, 0);
+		emailDigestMaxSize = getInt("xsp.openlog.email.digestMaxSize", 60, 1);
+		payloadThreshold = getInt("xsp.openlog.payloadThreshold", 0, 0);
+		sinks = getList("xsp.openlog.sinks", LogSinks.NSF);
+		final String fileDir = getProperty("xsp.openlog.file.directory", "");
+		fileDirectory = StringUtil.isNotEmpty(fileDir) ? fileDir : spoolDirectory;
+		fileName = getProperty("xsp.openlog.file.name", "openlog");
+		fileMaxSize = getInt("xsp.openlog.file.maxSize", 10240, 0);
+		fileRollInterval = getInt("xsp.openlog.file.rollInterval", 1440, 0);
+		fileFsyncInterval = getInt("xsp.openlog.file.fsyncInterval", 0, -1);
+		fileGzip = "true".equalsIgnoreCase(getProperty("xsp.openlog.file.gzip", "false"));
+		slowRequest = getInt("xsp.openlog.slowRequest", 0, 0);
+		slowPhase = getInt("xsp.openlog.slowPhase", 0, 0);
+		errorHolderCapacity = getInt("xsp.openlog.errorHolder.capacity", 100, 1);
+		tailLevel = getLevel("xsp.openlog.tailLevel");
+		tailEvents = getInt("xsp.openlog.tailEvents", 200, 1);
+		expires = System.currentTimeMillis() + 1000L * getInt("xsp.openlog.configRefresh", 300, 0);
+	}
+
+	/**
+	 * Gets the settings for the current application, loading them if they have not been loaded or have expired
+	 *
+	 * @return OpenLogConfig current settings
+	 */
+	public static OpenLogConfig getCurrent() {
+		if (null != fixed_) {
+			return fixed_;
+		}
+		final Map<String, Object> appScope = OpenLogUtil.getApplicationScope();
+		OpenLogConfig config = (OpenLogConfig) appScope.get(SCOPE_KEY);
+		if (null == config || config.isExpired()) {
+			config = new OpenLogConfig();
+			appScope.put(SCOPE_KEY, config);
+		}
+		return config;
+	}
+
+	/**
+	 * Fixes the settings returned by {@link #getCurrent()} for every application, for running outside an XPages
+	 * application, e.g. the benchmarks
+	 *
+	 * @param config
+	 *            OpenLogConfig to use, or null to go back to reading the settings from the current application
+	 */
+	static void setCurrent(OpenLogConfig config) {
+		fixed_ = config;
+	}
+
+	/**
+	 * Discards the settings for the current application, so they are read again on the next call to
+	 * {@link #getCurrent()}
+	 */
+	public static void invalidate() {
+		OpenLogUtil.getApplicationScope().remove(SCOPE_KEY);
+	}
+
+	/**
+	 * @param propertyName
+	 *            String property to retrieve
+	 * @param defaultValue
+	 *            String default if not declared
+	 * @return String property value, from xsp.properties / notes.ini or the Map passed to the constructor
+	 */
+	private String getProperty(String propertyName, String defaultValue) {
+		if (null == properties) {
+			return OpenLogUtil.getXspProperty(propertyName, defaultValue);
+		}
+		final String retVal = properties.get(propertyName);
+		return null == retVal ? defaultValue : retVal;
+	}
+
+	/**
+	 * @param propertyName
+	 *            String property to retrieve, a comma-separated list
+	 * @param defaultValue
+	 *            String default if not declared or empty
+	 * @return String[] trimmed values, never empty
+	 */
+	private String[] getList(String propertyName, String defaultValue) {
+		final List<String> values = new ArrayList<String>();
+		for (final String value : getProperty(propertyName, defaultValue).split(",")) {
+			if (value.trim().length() > 0) {
+				values.add(value.trim());
+			}
+		}
+		if (values.isEmpty()) {
+			values.add(defaultValue);
+		}
+		return values.toArray(new String[values.size()]);
+	}
+
+	/**
+	 * @param variableName
+	 *            String notes.ini variable to retrieve
+	 * @return String variable value or ""
+	 */
+	private String getIniVar(String variableName) {
+		if (null == properties) {
+			return OpenLogUtil.getIniVar(variableName, "");
+		}
+		return getProperty(variableName, "");
+	}
+
+	/**
+	 * @param propertyName
+	 *            String property to retrieve
+	 * @param defaultValue
+	 *            int default if not declared or not a number
+	 * @param minValue
+	 *            int minimum value allowed, anything lower uses the default
+	 * @return int property value
+	 */
+	private int getInt(String propertyName, int defaultValue, int minValue) {
+		try {
+			final int retVal = Integer.parseInt(getProperty(propertyName, Integer
+					.toString(defaultValue)).trim());
+			if (retVal >= minValue) {
+				return retVal;
+			}
+		} catch (final NumberFormatException e) {
+			OpenLogUtil.print("Non-numeric value for " + propertyName + ", using " + defaultValue);
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * @param propertyName
+	 *            String property to retrieve
+	 * @return Level named by the property, e.g. FINE, or null if not declared or not a Level
+	 */
+	private Level getLevel(String propertyName) {
+		final String value = getProperty(propertyName, "");
+		if (StringUtil.isEmpty(value)) {
+			return null;
+		}
+		try {
+			return Level.parse(value.trim().toUpperCase());
+		} catch (final IllegalArgumentException e) {
+			OpenLogUtil.print("Invalid " + propertyName + ": " + value);
+			return null;
+		}
+	}
+
+	/**
+	 * @param propertyName
+	 *            String property to retrieve
+	 * @param defaultValue
+	 *            double default if not declared, not a number or negative
+	 * @return double property value
+	 */
+	private double getDouble(String propertyName, double defaultValue) {
+		try {
+			final double retVal = Double.parseDouble(getProperty(propertyName, Double
+					.toString(defaultValue)).trim());
+			if (retVal >= 0) {
+				return retVal;
+			}
+		} catch (final NumberFormatException e) {
+			OpenLogUtil.print("Non-numeric value for " + propertyName + ", using " + defaultValue);
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * @return whether the settings need to be read again
+	 */
+	public boolean isExpired() {
+		return System.currentTimeMillis() > expires;
+	}
+
+	/**
+	 * @return xsp.openlog.filepath, default OpenLog.nsf
+	 */
+	public String getLogDbName() {
+		return logDbName;
+	}
+
+	/**
+	 * @return xsp.openlog.debugLevel, default 2
+	 */
+	public int getDebugLevel() {
+		return debugLevel;
+	}
+
+	/**
+	 * @return xsp.openlog.includeQueryString, default false
+	 */
+	public boolean isIncludeQueryString() {
+		return includeQueryString;
+	}
+
+	/**
+	 * @return xsp.openlog.suppressEventStack, true for anything except "false"
+	 */
+	public boolean isSuppressEventStack() {
+		return suppressEventStack;
+	}
+
+	/**
+	 * @return true if xsp.openlog.suppressEventControl has any value
+	 */
+	public boolean isSuppressEventControl() {
+		return suppressEventControl;
+	}
+
+	/**
+	 * @return xsp.openlog.displayError, true for anything except "false"
+	 */
+	public boolean isDisplayError() {
+		return displayError;
+	}
+
+	/**
+	 * @return xsp.openlog.genericErrorMessage or an empty string
+	 */
+	public String getGenericErrorMessage() {
+		return genericErrorMessage;
+	}
+
+	/**
+	 * @return xsp.openlog.email or an empty string
+	 */
+	public String getLogEmail() {
+		return logEmail;
+	}
+
+	/**
+	 * @return xsp.openlog.expireDate or an empty string
+	 */
+	public String getLogExpireDate() {
+		return logExpireDate;
+	}
+
+	/**
+	 * @return xsp.openlog.templateFilepath or an empty string
+	 */
+	public String getLogTemplatePath() {
+		return logTemplatePath;
+	}
+
+	/**
+	 * @return xsp.openlog.async, default false
+	 */
+	public boolean isAsync() {
+		return async;
+	}
+
+	/**
+	 * @return xsp.openlog.async.queueSize, default 1000
+	 */
+	public int getAsyncQueueSize() {
+		return asyncQueueSize;
+	}
+
+	/**
+	 * @return xsp.openlog.async.threads, default 1
+	 */
+	public int getAsyncThreads() {
+		return asyncThreads;
+	}
+
+	/**
+	 * @return xsp.openlog.async.shutdownTimeout in milliseconds, default 10000
+	 */
+	public int getAsyncShutdownTimeout() {
+		return asyncShutdownTimeout;
+	}
+
+	/**
+	 * @return xsp.openlog.async.batchSize, default 50
+	 */
+	public int getAsyncBatchSize() {
+		return asyncBatchSize;
+	}
+
+	/**
+	 * @return xsp.openlog.async.flushInterval in milliseconds, default 500
+	 */
+	public int getAsyncFlushInterval() {
+		return asyncFlushInterval;
+	}
+
+	/**
+	 * @return xsp.openlog.dedupWindow in seconds, default 0 so every error / event gets its own document
+	 */
+	public int getDedupWindow() {
+		return dedupWindow;
+	}
+
+	/**
+	 * @param level
+	 *            Level of the event
+	 * @return xsp.openlog.sampleRate.&lt;level&gt;, the proportion of events at that level to log, default 1
+	 */
+	public double getSampleRate(Level level) {
+		final Double rate = sampleRates.get(level.getName());
+		if (null == rate) {
+			return 1;
+		}
+		return rate.doubleValue();
+	}
+
+	/**
+	 * @return xsp.openlog.eventRateLimit, events per second per page or database, default 0 for no limit
+	 */
+	public double getEventRateLimit() {
+		return eventRateLimit;
+	}
+
+	/**
+	 * @return true if xsp.openlog.eventRateLimitBy=database, otherwise events are limited per page
+	 */
+	public boolean isEventRateLimitByDatabase() {
+		return eventRateLimitByDatabase;
+	}
+
+	/**
+	 * @return xsp.openlog.stackMaxDepth, stack frames logged for each Throwable, default 0 for no limit
+	 */
+	public int getStackMaxDepth() {
+		return stackMaxDepth;
+	}
+
+	/**
+	 * @return xsp.openlog.stackMaxCauses, causes and suppressed exceptions logged in the stack trace, default 0 for no
+	 *         limit
+	 */
+	public int getStackMaxCauses() {
+		return stackMaxCauses;
+	}
+
+	/**
+	 * @return xsp.openlog.stackDocuments, store each unique stack trace once in a LogStack document, default false
+	 */
+	public boolean isStackDocuments() {
+		return stackDocuments;
+	}
+
+	/**
+	 * @return xsp.openlog.securityCacheTtl, seconds a user's access level, roles and version are cached for, default
+	 *         60. 0 disables the cache
+	 */
+	public int getSecurityCacheTtl() {
+		return securityCacheTtl;
+	}
+
+	/**
+	 * @return xsp.openlog.spool, whether entries that can't be written are spooled to disk, see {@link LogSpool}.
+	 *         True for anything except "false"
+	 */
+	public boolean isSpool() {
+		return spool;
+	}
+
+	/**
+	 * @return xsp.openlog.spool.directory, default the openlog folder in the Domino data directory
+	 */
+	public String getSpoolDirectory() {
+		return spoolDirectory;
+	}
+
+	/**
+	 * @return xsp.openlog.spool.size, maximum size of the spool file in KB, default 16384
+	 */
+	public int getSpoolSize() {
+		return spoolSize;
+	}
+
+	/**
+	 * @return xsp.openlog.breaker.failures, consecutive failures before a log database stops being tried, default 3
+	 */
+	public int getBreakerFailures() {
+		return breakerFailures;
+	}
+
+	/**
+	 * @return xsp.openlog.breaker.cooldown, seconds before a failing log database is tried again, default 60
+	 */
+	public int getBreakerCooldown() {
+		return breakerCooldown;
+	}
+
+	/**
+	 * @return xsp.openlog.email.digest, seconds between email digests, default 0 to send an email for every entry
+	 */
+	public int getEmailDigest() {
+		return emailDigest;
+	}
+
+	/**
+	 * @return xsp.openlog.email.digestMaxGroups, distinct entries listed in an email digest, default 50
+	 */
+	public int getEmailDigestMaxGroups() {
+		return emailDigestMaxGroups;
+	}
+
+	/**
+	 * @return xsp.openlog.email.digestMaxStacks, stack traces included in an email digest, default 3
+	 */
+	public int getEmailDigestMaxStacks() {
+		return emailDigestMaxStacks;
+	}
+
+	/**
+	 * @return xsp.openlog.email.digestMaxSize, maximum size of an email digest in KB, default 60
+	 */
+	public int getEmailDigestMaxSize() {
+		return emailDigestMaxSize;
+	}
+
+	/**
+	 * @return xsp.openlog.payloadThreshold, characters above which a message or stack trace is stored as a
+	 *         compressed attachment, see {@link LogPayload}. Default 0, not attached
+	 */
+	public int getPayloadThreshold() {
+		return payloadThreshold;
+	}
+
+	/**
+	 * @return xsp.openlog.sinks, names of the {@link LogSink}s to write to, default "nsf"
+	 */
+	public String[] getSinks() {
+		return sinks.clone();
+	}
+
+	/**
+	 * @return xsp.openlog.file.directory, folder for the "file" sink, default the same as the spool directory
+	 */
+	public String getFileDirectory() {
+		return fileDirectory;
+	}
+
+	/**
+	 * @return xsp.openlog.file.name, name of the "file" sink's files, without extension. Default "openlog"
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return xsp.openlog.file.maxSize, KB after which the "file" sink starts a new file, default 10240, 0 for no
+	 *         limit
+	 */
+	public int getFileMaxSize() {
+		return fileMaxSize;
+	}
+
+	/**
+	 * @return xsp.openlog.file.rollInterval, minutes after which the "file" sink starts a new file, default 1440, 0
+	 *         for no limit
+	 */
+	public int getFileRollInterval() {
+		return fileRollInterval;
+	}
+
+	/**
+	 * @return xsp.openlog.file.fsyncInterval, minimum milliseconds between forcing the "file" sink's writes to disk.
+	 *         Default 0, after every batch, -1 to leave it to the operating system
+	 */
+	public int getFileFsyncInterval() {
+		return fileFsyncInterval;
+	}
+
+	/**
+	 * @return xsp.openlog.file.gzip, whether the "file" sink compresses files once they are rolled, default false
+	 */
+	public boolean isFileGzip() {
+		return fileGzip;
+	}
+
+	/**
+	 * @return xsp.openlog.slowRequest, milliseconds after which a request is logged as slow, default 0 for off
+	 */
+	public int getSlowRequest() {
+		return slowRequest;
+	}
+
+	/**
+	 * @return xsp.openlog.slowPhase, milliseconds after which a JSF phase is logged as slow, default 0 for off
+	 */
+	public int getSlowPhase() {
+		return slowPhase;
+	}
+
+	/**
+	 * @return xsp.openlog.tailLevel, events at this level or below are only logged, as one entry, if the request
+	 *         logs an error or is slow. Default null, every event is logged straight away
+	 */
+	public Level getTailLevel() {
+		return tailLevel;
+	}
+
+	/**
+	 * @return xsp.openlog.tailEvents, maximum events held for a request for xsp.openlog.tailLevel, default 200
+	 */
+	public int getTailEvents() {
+		return tailEvents;
+	}
+
+	/**
+	 * @return xsp.openlog.errorHolder.capacity, maximum errors and maximum events openLogBean holds for a session
+	 *         until they are logged, default 100
+	 */
+	public int getErrorHolderCapacity() {
+		return errorHolderCapacity;
+	}
+
+}
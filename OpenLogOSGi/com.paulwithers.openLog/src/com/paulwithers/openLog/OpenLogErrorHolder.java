@@ -18,11 +18,21 @@ package com.paulwithers.openLog;
 
  */
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import javax.faces.component.UIComponent;
+import javax.faces.context.FacesContext;
 
 import com.ibm.jscript.InterpretException;
 import com.ibm.jscript.types.FBSGlobalObject;
@@ -37,9 +47,12 @@ public class OpenLogErrorHolder implements Serializable {
 
 	// Changed from using TreeSet because there is a bug with that. If compareTo returns 0, because it implements TreeMap,
 	//it can still consider them equal, and ignore them - http://blog.tremend.ro/2007/05/17/problem-when-adding-elements-to-a-treesetcomparator-some-elements-are-not-added/
-	private LinkedHashSet<EventError> errors;
-	private LinkedHashSet<EventError> events;
-	private LinkedHashSet<EventError> loggedErrors = null;
+	// Since 8.1.0 held in BoundedLists, because concurrent partial refreshes for the session can add to them at the
+	// same time, and they must not grow without limit if they are never logged
+	private volatile BoundedList<EventError> errors;
+	private volatile BoundedList<EventError> events;
+	private volatile ConcurrentHashMap<EventError, Boolean> loggedErrors = null;
+	private final AtomicInteger overflow = new AtomicInteger();
 	private static final long serialVersionUID = 1L;
 
 	public OpenLogErrorHolder() {
@@ -49,19 +62,19 @@ public class OpenLogErrorHolder implements Serializable {
 	/**
 	 * LinkedHashSet (array of EventError objects in the order they were inserted)
 	 * 
-	 * @return LinkedHashSet Errors as a list
+	 * @return LinkedHashSet Errors as a list, a copy since 8.1.0, or null if there are none
 	 */
 	public LinkedHashSet<EventError> getErrors() {
-		return errors;
+		return toSet(errors);
 	}
 
 	/**
 	 * Loads a list of EventError objects, see {@link #getErrors()}
 	 * 
-	 * @return LinkedHashSet Events as a list
+	 * @return LinkedHashSet Events as a list, a copy since 8.1.0, or null if there are none
 	 */
 	public LinkedHashSet<EventError> getEvents() {
-		return events;
+		return toSet(events);
 	}
 
 	/**
@@ -70,7 +83,7 @@ public class OpenLogErrorHolder implements Serializable {
 	 * @return LinkedHashSet EventError objects for errors to be logged
 	 */
 	public LinkedHashSet<EventError> getLoggedErrors() {
-		return errors;
+		return getErrors();
 	}
 
 	/**
@@ -80,7 +93,163 @@ public class OpenLogErrorHolder implements Serializable {
 	 *            EventError objects for errors to be logged
 	 */
 	public void setLoggedErrors(LinkedHashSet<EventError> loggedErrors) {
-		this.loggedErrors = loggedErrors;
+		if (null == loggedErrors) {
+			this.loggedErrors = null;
+			return;
+		}
+		final ConcurrentHashMap<EventError, Boolean> logged = new ConcurrentHashMap<EventError, Boolean>();
+		for (EventError error : loggedErrors) {
+			logged.put(error, Boolean.TRUE);
+		}
+		this.loggedErrors = logged;
+	}
+
+	/**
+	 * Clears the errors that have been added as FacesMessages, at the start of RENDER_RESPONSE, so each error still
+	 * queued is added to this response
+	 * 
+	 * @since 8.1.0
+	 */
+	public void clearLoggedErrors() {
+		final ConcurrentHashMap<EventError, Boolean> logged = loggedErrors;
+		if (null == logged) {
+			createLoggedErrors();
+		} else {
+			logged.clear();
+		}
+	}
+
+	private synchronized ConcurrentHashMap<EventError, Boolean> createLoggedErrors() {
+		if (null == loggedErrors) {
+			loggedErrors = new ConcurrentHashMap<EventError, Boolean>();
+		}
+		return loggedErrors;
+	}
+
+	/**
+	 * @return int number of errors and events discarded because xsp.openlog.errorHolder.capacity was reached, since
+	 *         they were last taken
+	 * @since 8.1.0
+	 */
+	public int getOverflow() {
+		int count = overflow.get();
+		final BoundedList<EventError> errorList = errors;
+		if (null != errorList) {
+			count += errorList.getOverflow();
+		}
+		final BoundedList<EventError> eventList = events;
+		if (null != eventList) {
+			count += eventList.getOverflow();
+		}
+		return count;
+	}
+
+	/**
+	 * @return boolean true if any errors or events are waiting to be logged
+	 * @since 8.1.0
+	 */
+	public boolean hasQueued() {
+		return null != errors || null != events || overflow.get() > 0;
+	}
+
+	/**
+	 * Takes the errors to be logged, an error added at the same time goes in a new list, to be taken next time
+	 * 
+	 * @return LinkedHashSet errors in the order they were added, or null if there are none
+	 * @since 8.1.0
+	 */
+	public LinkedHashSet<EventError> takeErrors() {
+		return take(false);
+	}
+
+	/**
+	 * Takes the events to be logged, see {@link #takeErrors()}
+	 * 
+	 * @return LinkedHashSet events in the order they were added, or null if there are none
+	 * @since 8.1.0
+	 */
+	public LinkedHashSet<EventError> takeEvents() {
+		return take(true);
+	}
+
+	/**
+	 * @return int number of errors and events discarded from the lists taken since this was last called
+	 * @since 8.1.0
+	 */
+	public int takeOverflow() {
+		return overflow.getAndSet(0);
+	}
+
+	private LinkedHashSet<EventError> take(boolean events) {
+		final BoundedList<EventError> list;
+		synchronized (this) {
+			list = events ? this.events : this.errors;
+			if (null == list) {
+				return null;
+			}
+			if (events) {
+				this.events = null;
+			} else {
+				this.errors = null;
+			}
+		}
+		// waits for any add in progress, later ones go to a new list
+		final List<EventError> taken = list.close();
+		overflow.addAndGet(list.getOverflow());
+		return taken.isEmpty() ? null : new LinkedHashSet<EventError>(taken);
+	}
+
+	private static LinkedHashSet<EventError> toSet(BoundedList<EventError> list) {
+		if (null == list) {
+			return null;
+		}
+		return new LinkedHashSet<EventError>(list.toList());
+	}
+
+	/**
+	 * Creates the list the first time an error or event is added. Most sessions never add one, so the lists are
+	 * only created when needed
+	 * 
+	 * @param events
+	 *            boolean true for the events list, false for errors
+	 * @return BoundedList errors or events
+	 */
+	private BoundedList<EventError> getList(boolean events) {
+		BoundedList<EventError> list = events ? this.events : this.errors;
+		if (null == list) {
+			synchronized (this) {
+				list = events ? this.events : this.errors;
+				if (null == list) {
+					list = new BoundedList<EventError>(getCapacity());
+					if (events) {
+						this.events = list;
+					} else {
+						this.errors = list;
+					}
+				}
+			}
+		}
+		return list;
+	}
+
+	private static int getCapacity() {
+		try {
+			return OpenLogConfig.getCurrent().getErrorHolderCapacity();
+		} catch (Throwable t) {
+			// no XPages context
+			return 100;
+		}
+	}
+
+	/**
+	 * Creates an empty EventError, for code that used <code>holder.new EventError()</code> before EventError became a
+	 * static nested class
+	 * 
+	 * @return EventError to be populated with its setters
+	 * @since 8.1.0
+	 */
+	public EventError createEventError() {
+		return new EventError();
 	}
 
 	/**
@@ -104,6 +273,8 @@ public class OpenLogErrorHolder implements Serializable {
 		newErr.setControl(control);
 		newErr.setSeverity(severity);
 		newErr.setUnid(unid);
+		// worked out now, while the request that logged it still has the component
+		newErr.getFingerprint();
 		return newErr;
 	}
 
@@ -347,13 +518,15 @@ public class OpenLogErrorHolder implements Serializable {
 	 *            error to add to the list
 	 */
 	private void addToErrorsList(EventError newErr) {
-		if (null == getErrors()) {
-			errors = new LinkedHashSet<EventError>();
-		}
-
-		addFacesMessageForError(newErr);
-
-		errors.add(newErr);
+		BoundedList<EventError> list;
+		do {
+			list = getList(false);
+			if (list.add(newErr)) {
+				addFacesMessageForError(newErr);
+				return;
+			}
+			// only tried again if the list was taken while adding
+		} while (list.isClosed());
 	}
 
 	/**
@@ -492,30 +665,64 @@ public class OpenLogErrorHolder implements Serializable {
 	 *            event to be added to the list
 	 */
 	private void addToEventsList(EventError newEv) {
-		if (null == getEvents()) {
-			events = new LinkedHashSet<EventError>();
-		}
-		events.add(newEv);
+		BoundedList<EventError> list;
+		do {
+			list = getList(true);
+			if (list.add(newEv)) {
+				return;
+			}
+		} while (list.isClosed());
 	}
 
 	/**
+	 * One error or event. openLogBean is in sessionScope, so since 8.1.0 only what is needed to log it is serialized
+	 * with the session, see {@link #writeExternal(ObjectOutput)}, not the component or the exception.<br>
+	 * <br>
+	 * Since 8.1.0 this is a static nested class, because an Externalizable class must have a public no-argument
+	 * constructor to be read back. It no longer belongs to an OpenLogErrorHolder, so code compiled against earlier
+	 * versions that used <code>holder.new EventError()</code> must be changed and recompiled to use
+	 * {@link OpenLogErrorHolder#createEventError()} or <code>new OpenLogErrorHolder.EventError()</code>
+	 * 
 	 * @author withersp
 	 * @since 1.0.0
-	 * 
 	 */
-	public class EventError implements Serializable {
+	public static class EventError implements Externalizable {
+		private static final long serialVersionUID = 1L;
+		private static final int VERSION = 1;
+		private static final int HAS_ERROR = 1;
+		// FNV-1a, see http://www.isthe.com/chongo/tech/comp/fnv/
+		private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+		private static final long FNV_PRIME = 0x100000001b3L;
+
+		// only kept until the session is serialized
+		private transient UIComponent control;
+		private transient InterpretException error;
+		private String controlId;
+		private String clientId;
+		private boolean hasError;
+		private String errorMessage;
+		private String expressionText;
+		private int errorLine;
+		private String msg;
+		private int severity;
+		private String unid;
+		// the list is read by other threads, so the flag is only set once the value is visible, see getFingerprint()
+		private volatile long fingerprint;
+		private volatile boolean fingerprinted;
+
+		/**
+		 * Hashes the fingerprint rather than the fields, so adding to and checking the error and event lists costs the
+		 * same however long the message or expression text
+		 */
 		@Override
 		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + getOuterType().hashCode();
-			result = prime * result + ((control == null) ? 0 : control.hashCode());
-			result = prime * result + ((msg == null) ? 0 : msg.hashCode());
-			result = prime * result + severity;
-			result = prime * result + ((unid == null) ? 0 : unid.hashCode());
-			return result;
+			final long fingerprint = getFingerprint();
+			return (int) (fingerprint ^ (fingerprint >>> 32));
 		}
 
+		/**
+		 * Since 8.1.0 two EventErrors are equal if their fingerprints are, see {@link #getFingerprint()}
+		 */
 		@Override
 		public boolean equals(Object obj) {
 			if (this == obj) {
@@ -527,85 +734,161 @@ public class OpenLogErrorHolder implements Serializable {
 			if (getClass() != obj.getClass()) {
 				return false;
 			}
-			EventError other = (EventError) obj;
-			if (!getOuterType().equals(other.getOuterType())) {
-				return false;
-			}
-			if (control == null) {
-				if (other.control != null) {
-					return false;
-				}
-			} else if (!control.equals(other.control)) {
-				return false;
-			}
-			if (msg == null) {
-				if (other.msg != null) {
-					return false;
-				}
-			} else if (!msg.equals(other.msg)) {
-				return false;
-			}
-			if (severity != other.severity) {
-				return false;
-			}
-			if (unid == null) {
-				if (other.unid != null) {
-					return false;
+			return getFingerprint() == ((EventError) obj).getFingerprint();
+		}
+
+		/**
+		 * 64-bit hash of the control's id, message, severity, UNID and the error's message and expression text. It is
+		 * worked out once, when the EventError is created, and again only if one of those is set. The control is
+		 * identified by its id rather than the component itself, so the same error from the same control is a
+		 * duplicate in a later request too. Both fields are volatile and the value is written before the flag, so a
+		 * thread that sees the flag set also sees the value
+		 * 
+		 * @return long fingerprint
+		 * @since 8.1.0
+		 */
+		public long getFingerprint() {
+			if (!fingerprinted) {
+				long hash = FNV_OFFSET;
+				hash = fingerprint(hash, controlId);
+				hash = fingerprint(hash, msg);
+				hash = fingerprint(hash, severity);
+				hash = fingerprint(hash, unid);
+				if (hasError) {
+					hash = fingerprint(hash, errorMessage);
+					hash = fingerprint(hash, expressionText);
+				} else {
+					hash = fingerprint(hash, "");
+					hash = fingerprint(hash, "");
 				}
-			} else if (!unid.equals(other.unid)) {
-				return false;
+				// value first, then the flag that publishes it
+				fingerprint = hash;
+				fingerprinted = true;
 			}
+			return fingerprint;
+		}
 
-			String srcMsg = "";
-			String srcText = "";
-			String otherMsg = "";
-			String otherText = "";
-			if (null != this.getError()) {
-				srcMsg = this.getError().getLocalizedMessage();
-				srcText = this.getError().getExpressionText();
-			}
-			InterpretException otherErr = (other).getError();
-			if (null != otherErr) {
-				otherMsg = otherErr.getLocalizedMessage();
-				otherText = otherErr.getExpressionText();
-			}
-			if (!srcMsg.equals(otherMsg)) {
-				return false;
+		/**
+		 * Adds the length before the characters, so values can't run into one another, -1 for null
+		 */
+		private static long fingerprint(long hash, String value) {
+			if (null == value) {
+				return fingerprint(hash, -1);
 			}
-			if (!srcText.equals(otherText)) {
-				return false;
+			hash = fingerprint(hash, value.length());
+			for (int i = 0; i < value.length(); i++) {
+				final char c = value.charAt(i);
+				hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+				hash = (hash ^ (c >>> 8)) * FNV_PRIME;
 			}
-			return true;
+			return hash;
 		}
 
-		/**
-		 *
-		 */
-		private static final long serialVersionUID = 1L;
-		private UIComponent control;
-		private InterpretException error;
-		private String msg;
-		private int severity;
-		private String unid;
+		private static long fingerprint(long hash, int value) {
+			for (int shift = 0; shift < 32; shift += 8) {
+				hash = (hash ^ ((value >>> shift) & 0xff)) * FNV_PRIME;
+			}
+			return hash;
+		}
 
 		public EventError() {
 
 		}
 
+		/**
+		 * @return UIComponent the error is associated with. After the session has been serialized, it is looked up by
+		 *         id in the current page, so may be null
+		 */
 		public UIComponent getControl() {
+			if (null == control && null != controlId) {
+				try {
+					control = FacesContext.getCurrentInstance().getViewRoot().findComponent(controlId);
+				} catch (Throwable t) {
+					// no page to look in
+				}
+			}
 			return control;
 		}
 
 		public void setControl(UIComponent control) {
 			this.control = control;
+			controlId = null;
+			clientId = null;
+			if (null != control) {
+				controlId = control.getId();
+				try {
+					clientId = control.getClientId(FacesContext.getCurrentInstance());
+				} catch (Throwable t) {
+					// not in a request
+				}
+			}
+			fingerprinted = false;
 		}
 
+		/**
+		 * @return String id of the component the error is associated with, or null
+		 * @since 8.1.0
+		 */
+		public String getControlId() {
+			return controlId;
+		}
+
+		/**
+		 * @return String client id of the component the error is associated with when it was added, or null
+		 * @since 8.1.0
+		 */
+		public String getClientId() {
+			return clientId;
+		}
+
+		/**
+		 * @return InterpretException error, or null for an event. After the session has been serialized it is
+		 *         recreated from the message and expression text, without the original stack trace
+		 */
 		public InterpretException getError() {
+			if (null == error && hasError) {
+				error = new InterpretException(new Throwable(errorMessage));
+				error.setExpressionText(expressionText);
+			}
 			return error;
 		}
 
 		public void setError(InterpretException error) {
 			this.error = error;
+			hasError = null != error;
+			errorMessage = null;
+			expressionText = null;
+			errorLine = 0;
+			if (hasError) {
+				errorMessage = error.getLocalizedMessage();
+				expressionText = error.getExpressionText();
+				errorLine = error.getErrorLine();
+			}
+			fingerprinted = false;
+		}
+
+		/**
+		 * @return String error's localized message, or null
+		 * @since 8.1.0
+		 */
+		public String getErrorMessage() {
+			return errorMessage;
+		}
+
+		/**
+		 * @return String error's expression text, or null
+		 * @since 8.1.0
+		 */
+		public String getExpressionText() {
+			return expressionText;
+		}
+
+		/**
+		 * @return int error's line number in the expression
+		 * @since 8.1.0
+		 */
+		public int getErrorLine() {
+			return errorLine;
 		}
 
 		public String getMsg() {
@@ -614,6 +897,7 @@ public class OpenLogErrorHolder implements Serializable {
 
 		public void setMsg(String msg) {
 			this.msg = msg;
+			fingerprinted = false;
 		}
 
 		public int getSeverity() {
@@ -622,6 +906,7 @@ public class OpenLogErrorHolder implements Serializable {
 
 		public void setSeverity(int severity) {
 			this.severity = severity;
+			fingerprinted = false;
 		}
 
 		public String getUnid() {
@@ -630,10 +915,101 @@ public class OpenLogErrorHolder implements Serializable {
 
 		public void setUnid(String unid) {
 			this.unid = unid;
+			fingerprinted = false;
+		}
+
+		/**
+		 * Writes a version, flags, the fingerprint, varint numbers and UTF-8 strings with varint lengths. The component
+		 * and the exception are left out, see {@link #getControl()} and {@link #getError()}
+		 * 
+		 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+		 */
+		public void writeExternal(ObjectOutput out) throws IOException {
+			out.writeByte(VERSION);
+			out.writeByte(hasError ? HAS_ERROR : 0);
+			out.writeLong(getFingerprint());
+			writeVarInt(out, severity);
+			writeString(out, controlId);
+			writeString(out, clientId);
+			writeString(out, msg);
+			writeString(out, unid);
+			if (hasError) {
+				writeString(out, errorMessage);
+				writeString(out, expressionText);
+				writeVarInt(out, errorLine);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+		 */
+		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+			final int version = in.readUnsignedByte();
+			if (VERSION != version) {
+				throw new InvalidClassException(EventError.class.getName(), "Unknown version " + version);
+			}
+			hasError = (in.readUnsignedByte() & HAS_ERROR) != 0;
+			fingerprint = in.readLong();
+			fingerprinted = true;
+			severity = readVarInt(in);
+			controlId = readString(in);
+			clientId = readString(in);
+			msg = readString(in);
+			unid = readString(in);
+			if (hasError) {
+				errorMessage = readString(in);
+				expressionText = readString(in);
+				errorLine = readVarInt(in);
+			}
+		}
+
+		/**
+		 * Zig-zag encoded, so small negative numbers are short too
+		 */
+		private static void writeVarInt(ObjectOutput out, int value) throws IOException {
+			int zigzag = (value << 1) ^ (value >> 31);
+			while ((zigzag & ~0x7f) != 0) {
+				out.writeByte((zigzag & 0x7f) | 0x80);
+				zigzag >>>= 7;
+			}
+			out.writeByte(zigzag);
+		}
+
+		private static int readVarInt(ObjectInput in) throws IOException {
+			int zigzag = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				final int b = in.readUnsignedByte();
+				zigzag |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) {
+					return (zigzag >>> 1) ^ -(zigzag & 1);
+				}
+			}
+			throw new StreamCorruptedException("Malformed number");
+		}
+
+		/**
+		 * Length + 1, 0 for null, then the UTF-8 bytes. Unlike writeUTF there is no 64K limit on expression texts
+		 */
+		private static void writeString(ObjectOutput out, String value) throws IOException {
+			if (null == value) {
+				writeVarInt(out, 0);
+				return;
+			}
+			final byte[] bytes = value.getBytes("UTF-8");
+			writeVarInt(out, bytes.length + 1);
+			out.write(bytes);
 		}
 
-		private OpenLogErrorHolder getOuterType() {
-			return OpenLogErrorHolder.this;
+		private static String readString(ObjectInput in) throws IOException {
+			final int length = readVarInt(in) - 1;
+			if (length < 0) {
+				return null;
+			}
+			final byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return new String(bytes, "UTF-8");
 		}
 
 	}
@@ -643,20 +1019,23 @@ public class OpenLogErrorHolder implements Serializable {
 	 *            error to be added to facesMessage
 	 */
 	public void addFacesMessageForError(EventError newErr) {
-		// Quit if getLoggedErrors() is null. Will be initialised during beforePhase of renderResponse
-		if (null == loggedErrors) {
-			return;
+		// Quit if getLoggedErrors() is null. Will be initialised during beforePhase of renderResponse, or here if
+		// this is the first error added while rendering
+		ConcurrentHashMap<EventError, Boolean> logged = loggedErrors;
+		if (null == logged) {
+			if (!RequestTracker.get().isRendering()) {
+				return;
+			}
+			logged = createLoggedErrors();
 		}
 
-		// If not already added to facesMessage, add it
-		if (!loggedErrors.contains(newErr)) {
-			String dispErr = newErr.getError().getLocalizedMessage();
-			String ctrlId = null;
-			if (null != newErr.getControl()) {
-				ctrlId = newErr.getControl().getId();
-			}
+		// If not already added to facesMessage, add it. Only one request can add it
+		if (null == logged.putIfAbsent(newErr, Boolean.TRUE)) {
+			// the message is added against the control's id, so the component itself is not needed
+			String dispErr = newErr.getErrorMessage();
+			String ctrlId = newErr.getControlId();
 			if ("Interpret exception".equals(dispErr)) {
-				dispErr = newErr.getError().getExpressionText();
+				dispErr = newErr.getExpressionText();
 			}
 			if (!"".equals(newErr.getMsg())) {
 				dispErr += " - " + newErr.getMsg();
@@ -668,8 +1047,6 @@ public class OpenLogErrorHolder implements Serializable {
 					OpenLogUtil.getOpenLogItem().addFacesMessage(ctrlId, ctrlId.toUpperCase() + ": " + dispErr);
 				}
 			}
-
-			loggedErrors.add(newErr);
 		}
 
 	}
@@ -31,6 +31,7 @@ package com.paulwithers.openLog;
  * xsp.properties looking for the first parameter, looking first to current NSF, then the server.
  * If nothing is found, getIniVar is then called, looking to the notes.ini using the same key.
  * If nothing is still found, the second parameter from both methods is used, the default.
+ * Since 8.1.0 all settings are read once into OpenLogConfig, cached in applicationScope.
  *
  * 4. setThisAgent(boolean) method has been added. By default it gets the current page.
  * Otherwise it gets the previous page. Why? Because if we've been redirected to an error page,
@@ -40,6 +41,10 @@ package com.paulwithers.openLog;
  *
  * 6. _eventTime and _startTime recycled after creating logDoc. Nathan, I'll sleep a little less tonight,
  * but it's best practice ;-)
+ *
+ * 7. Since 8.1.0 OpenLogUtil.getOpenLogItem() returns an OpenLogItem per request instead of one static instance
+ * shared by every request, so the fields below only ever belong to one request thread. Each log call captures
+ * them into its own LogRecord, which isn't changed after that and is all that is passed to the writer.
  */
 
 /*
@@ -78,11 +83,11 @@ package com.paulwithers.openLog;
  * We'd need a LOT more infrastructure for that!
  */
 
-import java.io.PrintWriter;
 import java.io.Serializable;
-import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.StringTokenizer;
+import java.util.List;
 import java.util.Vector;
 import java.util.logging.Level;
 
@@ -96,7 +101,6 @@ import lotus.domino.Database;
 import lotus.domino.DateTime;
 import lotus.domino.Document;
 import lotus.domino.NotesException;
-import lotus.domino.RichTextItem;
 import lotus.domino.Session;
 
 public class OpenLogItem implements Serializable {
@@ -228,6 +232,8 @@ public class OpenLogItem implements Serializable {
 	private transient Boolean _displayError;
 	private transient String _displayErrorGeneric;
 	private transient String _currentDbPath;
+	private transient Boolean _async;
+	private transient String _logTemplatePath;
 
 	/**
 	 * Enum to define log type
@@ -341,7 +347,6 @@ public class OpenLogItem implements Serializable {
 	 */
 	public void setThisAgent(boolean currPage) {
 		String fromPage = "";
-		final String includeQueryString = OpenLogUtil.getXspProperty("xsp.openlog.includeQueryString", "false");
 		final String[] historyUrls = ExtLibUtil.getXspContext().getHistoryUrls();
 		if (StringUtil.isEmpty(historyUrls)) {
 			fromPage = ExtLibUtil.getXspContext().getUrl().toSiteRelativeString(ExtLibUtil.getXspContext());
@@ -359,7 +364,7 @@ public class OpenLogItem implements Serializable {
 		if (fromPage.indexOf("/") > -1) {
 			fromPage = fromPage.substring(1, fromPage.length());
 		}
-		if (!"true".equalsIgnoreCase(includeQueryString)) {
+		if (!OpenLogConfig.getCurrent().isIncludeQueryString()) {
 			if (fromPage.indexOf("?") > -1) {
 				fromPage = fromPage.substring(0, fromPage.indexOf("?"));
 			}
@@ -586,6 +591,8 @@ public class OpenLogItem implements Serializable {
 		_currentDbPath = null;
 		_accessLevel = null;
 		_eventTime = null;
+		_async = null;
+		_logTemplatePath = null;
 	}
 
 	/**
@@ -593,7 +600,7 @@ public class OpenLogItem implements Serializable {
 	 */
 	public String getLogExpireDate() {
 		if (StringUtil.isEmpty(_logExpireDate)) {
-			_logExpireDate = OpenLogUtil.getXspProperty("xsp.openlog.expireDate", "");
+			_logExpireDate = OpenLogConfig.getCurrent().getLogExpireDate();
 		}
 		return _logExpireDate;
 	}
@@ -603,17 +610,42 @@ public class OpenLogItem implements Serializable {
 	 */
 	public String getLogEmail() {
 		if (StringUtil.isEmpty(_logEmail)) {
-			_logEmail = OpenLogUtil.getXspProperty("xsp.openlog.email", "");
+			_logEmail = OpenLogConfig.getCurrent().getLogEmail();
 		}
 		return _logEmail;
 	}
 
+	/**
+	 * @return the filepath of the template to create the log database from, if it does not exist
+	 * @since 8.1.0
+	 */
+	public String getLogTemplatePath() {
+		if (null == _logTemplatePath) {
+			_logTemplatePath = OpenLogConfig.getCurrent().getLogTemplatePath();
+		}
+		return _logTemplatePath;
+	}
+
+	/**
+	 * Gets xsp.property of whether to write log documents on a background thread. Should be xsp.openlog.async=true
+	 * to write asynchronously, see {@link OpenLogWriter}
+	 *
+	 * @return whether log documents are written asynchronously
+	 * @since 8.1.0
+	 */
+	public Boolean getAsync() {
+		if (null == _async) {
+			_async = OpenLogConfig.getCurrent().isAsync();
+		}
+		return _async;
+	}
+
 	/**
 	 * @return the logDbName
 	 */
 	public String getLogDbName() {
 		if ("".equals(_logDbName) || null == _logDbName) {
-			_logDbName = OpenLogUtil.getXspProperty("xsp.openlog.filepath", "OpenLog.nsf");
+			_logDbName = OpenLogConfig.getCurrent().getLogDbName();
 			if ("[CURRENT]".equalsIgnoreCase(_logDbName)) {
 				setLogDbName(getThisDatabasePath());
 			}
@@ -630,14 +662,7 @@ public class OpenLogItem implements Serializable {
 	 * @since 4.0.0
 	 */
 	public Boolean getSuppressEventStack() {
-		final String dummyVar = OpenLogUtil.getXspProperty("xsp.openlog.suppressEventStack", "false");
-		if (StringUtil.isEmpty(dummyVar)) {
-			setSuppressEventStack(true);
-		} else if ("false".equalsIgnoreCase(dummyVar)) {
-			setSuppressEventStack(false);
-		} else {
-			setSuppressEventStack(true);
-		}
+		setSuppressEventStack(OpenLogConfig.getCurrent().isSuppressEventStack());
 		return _suppressEventStack;
 	}
 
@@ -777,7 +802,7 @@ public class OpenLogItem implements Serializable {
 	// 0 -- internal errors are discarded
 	// 1 -- Exception messages from internal errors are printed
 	// 2 -- stack traces from internal errors are also printed
-	public transient String olDebugLevel = OpenLogUtil.getXspProperty("xsp.openlog.debugLevel", "2");
+	public transient String olDebugLevel = getDefaultDebugLevel();
 
 	// this is a strange little variable we use to determine how far down the
 	// stack
@@ -816,11 +841,7 @@ public class OpenLogItem implements Serializable {
 	 * @since 6.0.0
 	 */
 	public void setSuppressControlIdsForEvents() {
-		suppressControlIdsForEvents = false;
-		final String retVal = OpenLogUtil.getXspProperty("xsp.openlog.suppressEventControl", "");
-		if (!"".equals(retVal)) {
-			suppressControlIdsForEvents = true;
-		}
+		suppressControlIdsForEvents = OpenLogConfig.getCurrent().isSuppressEventControl();
 	}
 
 	/**
@@ -829,12 +850,7 @@ public class OpenLogItem implements Serializable {
 	 */
 	public Boolean getDisplayError() {
 		if (null == _displayError) {
-			final String dummyVar = OpenLogUtil.getXspProperty("xsp.openlog.displayError", "true");
-			if ("false".equalsIgnoreCase(dummyVar)) {
-				setDisplayError(false);
-			} else {
-				setDisplayError(true);
-			}
+			setDisplayError(OpenLogConfig.getCurrent().isDisplayError());
 		}
 		return _displayError;
 	}
@@ -854,7 +870,7 @@ public class OpenLogItem implements Serializable {
 	 */
 	public String getDisplayErrorGeneric() {
 		if (null == _displayErrorGeneric) {
-			_displayErrorGeneric = OpenLogUtil.getXspProperty("xsp.openlog.genericErrorMessage", "");
+			_displayErrorGeneric = OpenLogConfig.getCurrent().getGenericErrorMessage();
 		}
 		return _displayErrorGeneric;
 	}
@@ -868,6 +884,25 @@ public class OpenLogItem implements Serializable {
 
 	}
 
+	/**
+	 * Creates an OpenLogItem with the Sessions and page passed in instead of looking them up from the XPages
+	 * context, for use outside an XPages request, e.g. the benchmarks. Settings come from
+	 * {@link OpenLogConfig#getCurrent()} as normal
+	 *
+	 * @param session
+	 *            Session of the current user
+	 * @param sessionAsSigner
+	 *            Session of the signer
+	 * @param thisAgent
+	 *            String page to log against
+	 * @since 8.1.0
+	 */
+	OpenLogItem(Session session, Session sessionAsSigner, String thisAgent) {
+		_session = session;
+		_sessionAsSigner = sessionAsSigner;
+		_thisAgent = thisAgent;
+	}
+
 	/**
 	 * @return the session
 	 */
@@ -1083,25 +1118,14 @@ public class OpenLogItem implements Serializable {
 	 * by the skip variable)
 	 */
 	private Vector<String> getStackTrace(Throwable ee, int skip) {
-		final Vector<String> v = new Vector<String>(32);
 		try {
-			final StringWriter sw = new StringWriter();
-			ee.printStackTrace(new PrintWriter(sw));
-			final StringTokenizer st = new StringTokenizer(sw.toString(), "\n");
-			int count = 0;
-			while (st.hasMoreTokens()) {
-				if (skip <= count++) {
-					v.addElement(st.nextToken().trim());
-				} else {
-					st.nextToken();
-				}
-			}
-
+			final OpenLogConfig config = OpenLogConfig.getCurrent();
+			return StackTraceCapture.capture(ee, skip, config.getStackMaxDepth(), config.getStackMaxCauses());
 		} catch (final Exception e) {
 			OpenLogUtil.debugPrint(e);
 		}
 
-		return v;
+		return new Vector<String>();
 	}
 
 	/**
@@ -1115,10 +1139,9 @@ public class OpenLogItem implements Serializable {
 
 	private String getDefaultDebugLevel() {
 		try {
-			final String defaultLevel_ = OpenLogUtil.getXspProperty("xsp.openlog.debugLevel", "2");
-			return defaultLevel_;
+			return Integer.toString(OpenLogConfig.getCurrent().getDebugLevel());
 		} catch (final Throwable t) {
-			OpenLogUtil.debugPrint(t);
+			// no XPages context, so use the default
 			return "2";
 		}
 	}
@@ -1191,212 +1214,314 @@ public class OpenLogItem implements Serializable {
 	 * and it will write everything to the database of your choice.
 	 */
 	public boolean writeToLog() {
-		// exit early if there is no database
-		Database db = null;
-		boolean retval = false;
-		Document logDoc = null;
-		RichTextItem rtitem = null;
-		Database docDb = null;
-
 		try {
-			if (!StringUtil.equals(getCurrentDatabasePath(), ExtLibUtil.getCurrentDatabase().getFilePath())) {
-				reinitialiseSettings();
+			// before anything that calls Notes, so holding an event costs next to nothing
+			if (LogType.TYPE_EVENT.getValue().equals(getEventType())
+					&& RequestTracker.get().capture(getSeverity(), getMessage())) {
+				// held until the end of the request, see xsp.openlog.tailLevel
+				return true;
 			}
+			checkCurrentDatabase();
 
-			if (StringUtil.isEmpty(getLogEmail())) {
-				db = getLogDb(false);
-				if (db == null) {
-					db = createLogDbFromTemplate();
-				}
-			} else {
-				db = getSessionAsSigner().getDatabase(getThisServer(), "mail.box", false);
+			final double sampleWeight = getSampleWeight(getSeverity(), getEventType());
+			if (sampleWeight == 0) {
+				// sampled out, deliberately not logged
+				return true;
 			}
-			if (db == null) {
-				OpenLogUtil.print("Could not retrieve database at path " + getLogDbName());
-				return false;
-			} else {
-				if (!db.isOpen()) {
-					OpenLogUtil.print(getUserName() + " (current user) cannot open database at path "
-							+ getLogDbName()
-							+ ", if you believe the ACL is correct, the database may have become corrupt");
-					db = getLogDb(true);
-					if (!db.isOpen()) {
-						OpenLogUtil.print(getSessionAsSigner().getEffectiveUserName()
-								+ " (signer) cannot open database at path " + getLogDbName()
-								+ ", if you believe the ACL is correct, the database may have become corrupt");
-
-						return false;
-					}
-				}
+
+			final LogRecord record = createLogRecord();
+			record.setSampleWeight(sampleWeight);
+			return writeToLog(record, getErrDoc(), getAsync());
+		} catch (final Throwable t) {
+			OpenLogUtil.debugPrint(t);
+			return false;
+		} finally {
+			if (_errDoc != null) {
+				_errDoc = null;
+				_errDocUnid = null;
 			}
+		}
+	}
 
-			logDoc = db.createDocument();
-			rtitem = logDoc.createRichTextItem("LogDocInfo");
-
-			logDoc.appendItemValue("Form", _logFormName);
-
-			final Throwable ee = getBase();
-			String errMsg = "";
-			if (null != ee) {
-				final StackTraceElement ste = ee.getStackTrace()[0];
-				if (ee instanceof NotesException) {
-					logDoc.replaceItemValue("LogErrorNumber", ((NotesException) ee).id);
-					errMsg = ((NotesException) ee).text;
-				} else if ("Interpret exception".equals(ee.getMessage())
-						&& ee instanceof com.ibm.jscript.JavaScriptException) {
-					final com.ibm.jscript.InterpretException ie = (com.ibm.jscript.InterpretException) ee;
-					errMsg = "Expression Language Interpret Exception " + ie.getExpressionText();
-				} else {
-					errMsg = ee.getMessage();
-				}
+	/**
+	 * Re-reads the settings if the OpenLogItem was last used for a different database, so must be called before
+	 * creating a LogRecord
+	 *
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 * @since 8.1.0
+	 */
+	void checkCurrentDatabase() throws NotesException {
+		if (!StringUtil.equals(getCurrentDatabasePath(), ExtLibUtil.getCurrentDatabase().getFilePath())) {
+			reinitialiseSettings();
+		}
+	}
 
-				if (LogType.TYPE_EVENT.getValue().equals(getEventType())) {
-					if (!getSuppressEventStack()) {
-						logDoc.replaceItemValue("LogStackTrace", getStackTrace(ee));
-					}
-				} else {
-					logDoc.replaceItemValue("LogStackTrace", getStackTrace(ee));
-				}
-				logDoc.replaceItemValue("LogErrorLine", ste.getLineNumber());
-				logDoc.replaceItemValue("LogFromMethod", ste.getClass() + "." + ste.getMethodName());
+	/**
+	 * @param severity
+	 *            Level to be logged
+	 * @param eventType
+	 *            String "Error" or "Event"
+	 * @return double number of events a log document represents, see {@link LogSampler}, or 0 if this event is not
+	 *         to be logged. Always 1 for errors
+	 * @since 8.1.0
+	 */
+	double getSampleWeight(Level severity, String eventType) {
+		// every entry logged passes through here
+		OpenLogStats.submitted();
+		if (LogType.TYPE_ERROR.getValue().equals(eventType)) {
+			// so events held for the request are logged too
+			RequestTracker.get().setErrorLogged();
+		} else if (LogType.TYPE_EVENT.getValue().equals(eventType)) {
+			final double weight = LogSampler.sample(severity, getCurrentDatabasePath(), getThisAgent(), OpenLogConfig
+					.getCurrent());
+			if (weight == 0) {
+				OpenLogStats.sampled();
 			}
+			return weight;
+		}
+		return 1;
+	}
 
-			if ("".equals(errMsg)) {
-				errMsg = getMessage();
-			} else {
-				errMsg += " - " + getMessage();
-			}
+	/**
+	 * Writes a record to the log database and any other {@link LogSink}s, or queues it for an {@link OpenLogWriter}
+	 * thread to write
+	 *
+	 * @param record
+	 *            LogRecord to log
+	 * @param errDoc
+	 *            Document the record relates to or null
+	 * @param async
+	 *            boolean whether to queue the record instead of writing it on this thread
+	 * @return boolean whether the record was written or queued
+	 * @since 8.1.0
+	 */
+	boolean writeToLog(LogRecord record, Document errDoc, boolean async) {
+		return writeToLog(Collections.singletonList(record), errDoc, async) == 1;
+	}
 
-			logDoc.replaceItemValue("LogErrorMessage", errMsg);
-			logDoc.replaceItemValue("LogEventTime", getEventTime());
-			logDoc.replaceItemValue("LogEventType", getEventType());
-			// If greater than 32k, put in logDocInfo
-			if (getMessage().length() > 32000) {
-				rtitem.appendText(getMessage());
-				rtitem.addNewLine();
-				logDoc.replaceItemValue("LogMessage", getMessage().substring(0, 100) + "...");
-			} else {
-				logDoc.replaceItemValue("LogMessage", getMessage());
-			}
-			logDoc.replaceItemValue("LogSeverity", getSeverity().getName());
-			logDoc.replaceItemValue("LogFromDatabase", getCurrentDatabasePath());
-			logDoc.replaceItemValue("LogFromServer", getThisServer());
-			logDoc.replaceItemValue("LogFromAgent", getThisAgent());
-			logDoc.replaceItemValue("LogAgentLanguage", "Java");
-			logDoc.replaceItemValue("LogUserName", getUserName());
-			logDoc.replaceItemValue("LogEffectiveName", getEffName());
-			logDoc.replaceItemValue("LogAccessLevel", getAccessLevel());
-			logDoc.replaceItemValue("LogUserRoles", getUserRoles());
-			logDoc.replaceItemValue("LogClientVersion", getClientVersion());
-			logDoc.replaceItemValue("LogAgentStartTime", getStartTime());
-
-			if (getErrDoc() != null) {
-				docDb = getErrDoc().getParentDatabase();
-				rtitem.appendText("The document associated with this event is:");
-				rtitem.addNewLine(1);
-				rtitem.appendText("Server: " + docDb.getServer());
-				rtitem.addNewLine(1);
-				rtitem.appendText("Database: " + docDb.getFilePath());
-				rtitem.addNewLine(1);
-				rtitem.appendText("UNID: " + getErrDoc().getUniversalID());
-				rtitem.addNewLine(1);
-				rtitem.appendText("Note ID: " + getErrDoc().getNoteID());
-				rtitem.addNewLine(1);
-				rtitem.appendText("DocLink: ");
-				rtitem.appendDocLink(_errDoc, getErrDoc().getUniversalID());
-			}
+	/**
+	 * Writes records to the log database and any other {@link LogSink}s, or queues them for an {@link OpenLogWriter}
+	 * thread to write. Writing on this thread, each sink gets all the records at once, the "nsf" sink being an
+	 * {@link NsfLogSink} using this request's Sessions, so the log database is opened once and several records cost
+	 * little more than one. The records must all be from this OpenLogItem, so are logged to the same database
+	 *
+	 * @param records
+	 *            List of LogRecords to log
+	 * @param errDoc
+	 *            Document every record relates to or null, otherwise a record's document is looked up by the
+	 *            LogDocumentWriter from the UNID in the record
+	 * @param async
+	 *            boolean whether to queue the records instead of writing them on this thread
+	 * @return int number of records written or queued, repeats within xsp.openlog.dedupWindow count as written
+	 * @since 8.1.0
+	 */
+	int writeToLog(List<LogRecord> records, Document errDoc, boolean async) {
+		return writeToLog(records, errDoc, async, true);
+	}
 
-			// make sure Depositor-level users can add documents too
-			logDoc.appendItemValue("$PublicAccess", "1");
+	/**
+	 * @param records
+	 *            List of LogRecords to log
+	 * @param errDoc
+	 *            Document every record relates to or null
+	 * @param async
+	 *            boolean whether to queue the records instead of writing them on this thread
+	 * @param countRepeats
+	 *            boolean whether repeats within xsp.openlog.dedupWindow count as written
+	 * @return int number of records written or queued
+	 * @see #writeToLog(List, Document, boolean)
+	 * @since 8.1.0
+	 */
+	int writeToLog(List<LogRecord> records, Document errDoc, boolean async, boolean countRepeats) {
+		int retval = 0;
+		final long start = System.nanoTime();
 
-			if (StringUtil.isNotEmpty(getLogEmail())) {
-				logDoc.replaceItemValue("Recipients", getLogEmail());
-				logDoc.replaceItemValue("SendTo", getLogEmail());
-				logDoc.replaceItemValue("From", getUserName());
-				logDoc.replaceItemValue("Principal", getUserName());
+		try {
+			if (records.isEmpty()) {
+				return 0;
 			}
-
-			// Set expiry date, if defined
-			if (!StringUtil.isEmpty(getLogExpireDate())) {
-				try {
-					final Integer expiryPeriod = new Integer(getLogExpireDate());
-					_startTime.adjustDay(expiryPeriod);
-					logDoc.replaceItemValue("ExpireDate", _startTime);
-				} catch (final Throwable t) {
-					logDoc.replaceItemValue("ArchiveFlag",
-							"WARNING: Xsp Properties in the application has a non-numeric value for xsp.openlog.expireDate, so cannot be set to auto-expire");
+			LogSpool.configure(OpenLogConfig.getCurrent());
+			LogCircuitBreaker.configure(OpenLogConfig.getCurrent());
+			LogEmailDigest.configure(OpenLogConfig.getCurrent());
+			LogPayload.configure(OpenLogConfig.getCurrent());
+			LogSinks.configure(OpenLogConfig.getCurrent());
+			// repeats are only counted on the first log document, so without one every record has to be written
+			final long dedupWindow = LogSinks.isActive(LogSinks.NSF) ? 1000L * OpenLogConfig.getCurrent()
+					.getDedupWindow() : 0;
+			final List<LogRecord> toWrite = new ArrayList<LogRecord>(records.size());
+			for (final LogRecord record : records) {
+				if (LogDeduplicator.isDuplicate(record, dedupWindow)) {
+					OpenLogStats.deduplicated();
+					if (countRepeats) {
+						retval++;
+					}
+				} else {
+					toWrite.add(record);
+				}
+			}
+			if (async) {
+				// repeat counts are updated by the writer threads
+				for (final LogRecord record : toWrite) {
+					if (OpenLogWriter.getInstance(OpenLogConfig.getCurrent()).submit(record)) {
+						retval++;
+					}
 				}
+				return retval;
 			}
-			logDoc.save(true);
-			retval = true;
+			NsfLogSink nsf = null;
+			if (LogSinks.isActive(LogSinks.NSF)) {
+				final LogRecord first = records.get(0);
+				// as before 8.1.0, only the signer with full access is expected to be able to create databases
+				final Session creator = StringUtil.isEmpty(first.getLogTemplatePath()) ? null : ExtLibUtil
+						.getCurrentSessionAsSignerWithFullAccess();
+				nsf = new NsfLogSink(getSession(), getSessionAsSigner(), creator, errDoc, first.getFromServer(), first
+						.getLogDbName());
+			}
+			retval += LogSinks.writeDirect(toWrite, nsf);
 		} catch (final Throwable t) {
 			OpenLogUtil.debugPrint(t);
-			retval = false;
 		} finally {
-			if (_errDoc != null) {
-				_errDoc = null;
-				_errDocUnid = null;
-			}
-			// recycle all the logDoc objects when we're done with them
-			try {
-				if (rtitem != null) {
-					rtitem.recycle();
-				}
-			} catch (final Exception e2) {
-				// NTF why the hell does .recycle() throw an Exception?
+			// with async, the writer threads record how long the records take to write
+			if (async) {
+				OpenLogStats.enqueueTime(System.nanoTime() - start);
+			} else {
+				OpenLogStats.writeTime(System.nanoTime() - start);
 			}
-			rtitem = null;
-			try {
-				if (logDoc != null) {
-					logDoc.recycle();
-				}
-			} catch (final Exception e2) {
-				// see above
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Captures everything to be written to the log document while we still have the XPages context, so it can be
+	 * written on this or a background thread
+	 *
+	 * @return LogRecord for the current error / event
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 * @since 8.1.0
+	 */
+	LogRecord createLogRecord() throws NotesException {
+		return createLogRecord(getBase(), getMessage(), getSeverity(), getEventType(), getErrDoc());
+	}
+
+	/**
+	 * Captures everything to be written to the log document for an error / event that hasn't been set on this
+	 * OpenLogItem, e.g. from {@link OpenLog.Builder}
+	 *
+	 * @param ee
+	 *            Throwable to log
+	 * @param message
+	 *            String message to log
+	 * @param severity
+	 *            Level to log at
+	 * @param eventType
+	 *            String "Error" or "Event"
+	 * @param errDoc
+	 *            Document the error / event relates to or null
+	 * @return LogRecord for the error / event
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 * @since 8.1.0
+	 */
+	LogRecord createLogRecord(Throwable ee, String message, Level severity, String eventType, Document errDoc)
+			throws NotesException {
+		final LogRecord record = new LogRecord(_logFormName, eventType, severity);
+
+		String errMsg = "";
+		if (null != ee) {
+			if (ee instanceof NotesException) {
+				record.setErrorNumber(((NotesException) ee).id);
+				errMsg = ((NotesException) ee).text;
+			} else if ("Interpret exception".equals(ee.getMessage())
+					&& ee instanceof com.ibm.jscript.JavaScriptException) {
+				final com.ibm.jscript.InterpretException ie = (com.ibm.jscript.InterpretException) ee;
+				errMsg = "Expression Language Interpret Exception " + ie.getExpressionText();
+			} else {
+				errMsg = ee.getMessage();
 			}
-			logDoc = null;
-			try {
-				if (_startTime != null) {
-					_startTime.recycle();
+
+			if (LogType.TYPE_EVENT.getValue().equals(eventType)) {
+				if (!getSuppressEventStack()) {
+					record.setStackTrace(getStackTrace(ee));
 				}
-			} catch (final Exception e2) {
-				// see above
+			} else {
+				record.setStackTrace(getStackTrace(ee));
 			}
-			_startTime = null;
-			try {
-				if (_eventTime != null) {
-					_eventTime.recycle();
-				}
-			} catch (final Exception e2) {
-				// see above
+			final StackTraceElement[] stack = ee.getStackTrace();
+			if (stack.length > 0) {
+				final StackTraceElement ste = stack[0];
+				record.setErrorLine(ste.getLineNumber());
+				record.setFromMethod(ste.getClass() + "." + ste.getMethodName());
 			}
-			_eventTime = null;
 		}
 
-		return retval;
+		if ("".equals(errMsg)) {
+			errMsg = message;
+		} else {
+			errMsg += " - " + message;
+		}
+		record.setErrorMessage(errMsg);
+		record.setMessage(message);
+
+		final Date now = new Date();
+		record.setEventTime(now);
+		record.setStartTime(now);
+		record.setFromDatabase(getCurrentDatabasePath());
+		record.setFromServer(getThisServer());
+		record.setFromAgent(getThisAgent());
+		record.setUserName(getUserName());
+		record.setEffectiveName(getEffName());
+		final SecurityContextCache.Entry security = getSecurityContext(record.getEffectiveName());
+		record.setAccessLevel(security.getAccessLevel());
+		record.setUserRoles(security.getUserRoles());
+		record.setClientVersion(security.getClientVersion());
+
+		record.setLogDbName(getLogDbName());
+		record.setLogEmail(getLogEmail());
+		record.setLogExpireDate(getLogExpireDate());
+		record.setLogTemplatePath(getLogTemplatePath());
+
+		if (errDoc != null) {
+			final Database docDb = errDoc.getParentDatabase();
+			record.setDoc(docDb.getServer(), docDb.getFilePath(), errDoc.getUniversalID(), errDoc.getNoteID());
+		}
+
+		// Repeats can't be collapsed into an email that's already been sent
+		if (OpenLogConfig.getCurrent().getDedupWindow() > 0 && StringUtil.isEmpty(record.getLogEmail())) {
+			record.setFingerprint(LogDeduplicator.fingerprint(ee, record.getFromAgent(), record.getMessage()));
+		}
+		// Likewise an email has to carry its own stack trace
+		if (OpenLogConfig.getCurrent().isStackDocuments() && null != record.getStackTrace()
+				&& StringUtil.isEmpty(record.getLogEmail())) {
+			record.setStackHash(LogStackStore.hash(record.getStackTrace()));
+		}
+		return record;
 	}
 
 	/**
-	 * Checks whether there is an org.openlog.templateFilepath xsp/notes.ini variable. If so, creates a copy of that
-	 * database to use as the logDb
+	 * Gets the access level, roles and version for the user in the current database, from {@link SecurityContextCache}
+	 * if they have been logged recently
 	 *
-	 * @return Database log database to log to
-	 * @throws NotesException
-	 *             when using core lotus.domino classes
+	 * @param effName
+	 *            String effective user name
+	 * @return SecurityContextCache.Entry for the user
+	 * @since 8.1.0
 	 */
-	private Database createLogDbFromTemplate() throws NotesException {
-		Database returnDb = null;
-		// If a templateFilePath is defined, create a copy of the template to
-		// the logDbFilePath
-		final String templateFilePath = OpenLogUtil.getXspProperty("xsp.openlog.templateFilepath", "");
-		if (!"".equals(templateFilePath)) {
-			final Session sessFullAccess = ExtLibUtil.getCurrentSessionAsSignerWithFullAccess();
-			final Database templateDb = sessFullAccess.getDatabase(sessFullAccess.getServerName(), templateFilePath,
-					false);
-			if (null != templateDb) {
-				returnDb = templateDb.createCopy(sessFullAccess.getServerName(), getLogDbName());
+	private SecurityContextCache.Entry getSecurityContext(String effName) {
+		String key = null;
+		try {
+			key = SecurityContextCache.getKey(effName, getCurrentDatabase().getReplicaID());
+			final SecurityContextCache.Entry cached = SecurityContextCache.get(key);
+			if (null != cached) {
+				return cached;
 			}
+		} catch (final Exception e) {
+			OpenLogUtil.debugPrint(e);
 		}
-		return returnDb;
+		final int ttl = (null == key) ? 0 : OpenLogConfig.getCurrent().getSecurityCacheTtl();
+		return SecurityContextCache.put(key, getAccessLevel(), getUserRoles(), getClientVersion(), ttl);
 	}
 
 	/**
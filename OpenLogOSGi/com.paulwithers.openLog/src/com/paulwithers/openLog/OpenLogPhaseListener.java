@@ -18,27 +18,31 @@ package com.paulwithers.openLog;
 
  */
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
 import javax.faces.FacesException;
+import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
 import javax.faces.el.PropertyNotFoundException;
 import javax.faces.event.PhaseEvent;
 import javax.faces.event.PhaseId;
 import javax.faces.event.PhaseListener;
+import javax.servlet.ServletRequest;
 
+import com.ibm.commons.util.StringUtil;
 import com.ibm.jscript.InterpretException;
 import com.ibm.jscript.parser.ParseException;
 import com.ibm.xsp.FacesExceptionEx;
 import com.ibm.xsp.exception.EvaluationExceptionEx;
 import com.ibm.xsp.extlib.util.ExtLibUtil;
 import com.paulwithers.openLog.OpenLogErrorHolder.EventError;
+import com.paulwithers.openLog.OpenLogItem.LogType;
 
 import lotus.domino.Database;
-import lotus.domino.Document;
 import lotus.domino.NotesException;
 
 /**
@@ -50,19 +54,22 @@ public class OpenLogPhaseListener implements PhaseListener {
 	private static final long serialVersionUID = 1L;
 	private static final int RENDER_RESPONSE = 6;
 
-	@SuppressWarnings("unchecked")
 	public void beforePhase(PhaseEvent event) {
-		// Add FacesContext messages for anything captured so far
-		if (RENDER_RESPONSE == event.getPhaseId().getOrdinal()) {
-			Map<String, Object> r = FacesContext.getCurrentInstance().getExternalContext().getRequestMap();
-			Map<String, Object> sessScope = FacesContext.getCurrentInstance().getExternalContext().getSessionMap();
-			if (null == r.get("error")) {
-				OpenLogUtil.getOpenLogItem().setThisAgent(true);
-			}
-			if (null != sessScope.get("openLogBean")) {
+		final int phase = event.getPhaseId().getOrdinal();
+		final RequestTracker tracker = RequestTracker.get();
+		// settings are per application, so are read for each request
+		if (RequestTracker.RESTORE_VIEW == phase || !tracker.isConfigured()) {
+			tracker.configure(OpenLogConfig.getCurrent());
+		}
+		tracker.beforePhase(phase);
+		// Add FacesContext messages for anything captured so far. openLogBean is in sessionScope, so may have been
+		// added to by another request, always check it
+		if (RENDER_RESPONSE == phase) {
+			OpenLogErrorHolder errList = (OpenLogErrorHolder) FacesContext.getCurrentInstance().getExternalContext()
+					.getSessionMap().get("openLogBean");
+			if (null != errList) {
 				// sessionScope.openLogBean is not null, the developer has called openLogBean.addError(e,this)
-				OpenLogErrorHolder errList = (OpenLogErrorHolder) sessScope.get("openLogBean");
-				errList.setLoggedErrors(new LinkedHashSet<EventError>());
+				errList.clearLoggedErrors();
 				// loop through the ArrayList of EventError objects and add any errors already captured as a facesMessage
 				if (null != errList.getErrors()) {
 					for (EventError error : errList.getErrors()) {
@@ -80,101 +87,233 @@ public class OpenLogPhaseListener implements PhaseListener {
 	 */
 	@SuppressWarnings("unchecked")
 	public void afterPhase(PhaseEvent event) {
+		final int phase = event.getPhaseId().getOrdinal();
+		final RequestTracker tracker = RequestTracker.get();
+		tracker.afterPhase(phase);
+		if (RENDER_RESPONSE != phase) {
+			return;
+		}
 		try {
-			if (RENDER_RESPONSE == event.getPhaseId().getOrdinal()) {
-				Map<String, Object> r = FacesContext.getCurrentInstance().getExternalContext().getRequestMap();
+			// the page is only worked out when something is logged
+			final Object uncaught = getUncaughtError();
+			if (null != uncaught) {
+				processUncaughtException(uncaught);
+
+			} else {
 				Map<String, Object> sessScope = FacesContext.getCurrentInstance().getExternalContext().getSessionMap();
-				if (null != r.get("error")) {
-					processUncaughtException(r);
-
-				} else if (null != sessScope.get("openLogBean")) {
-					// sessionScope.openLogBean is not null, the developer has called openLogBean.addError(e,this)
-					OpenLogErrorHolder errList = (OpenLogErrorHolder) sessScope.get("openLogBean");
-					// loop through the ArrayList of EventError objects
-					if (null != errList.getErrors()) {
-						for (EventError error : errList.getErrors()) {
-							String msg = "";
-							if (!"".equals(error.getMsg())) {
-								msg = msg + error.getMsg();
-							}
-							msg = msg + "Error on ";
-							if (null != error.getControl()) {
-								msg = msg + error.getControl().getId();
-							}
-							if (null != error.getError()) {
-								msg = msg + ":\n\n" + error.getError().getLocalizedMessage() + "\n\n"
-										+ error.getError().getExpressionText();
-							}
-							Level severity = convertSeverity(error.getSeverity());
-							Document passedDoc = null;
-							if (!"".equals(error.getUnid())) {
-								try {
-									Database currDb = ExtLibUtil.getCurrentDatabase();
-									passedDoc = currDb.getDocumentByUNID(error.getUnid());
-								} catch (Exception e) {
-									msg = msg + "\n\nCould not retrieve document but UNID was passed: "
-											+ error.getUnid();
-								}
-							}
-							OpenLogUtil.logErrorEx(error.getError(), msg, severity, passedDoc);
-							try {
-								passedDoc.recycle();
-							} catch (Throwable e) {
-								// nothing to recycle here, move along
-							}
-						}
-					}
-					// loop through the ArrayList of EventError objects
-					if (null != errList.getEvents()) {
-						for (EventError eventObj : errList.getEvents()) {
-							String msg = "";
-							if (null != eventObj.getControl()
-									&& !OpenLogUtil.getOpenLogItem().isSuppressControlIdsForEvents()) {
-								msg = msg + "Event logged for " + eventObj.getControl().getId() + " ";
-							}
-							msg = msg + eventObj.getMsg();
-							Level severity = convertSeverity(eventObj.getSeverity());
-							Document passedDoc = null;
-							if (!"".equals(eventObj.getUnid())) {
-								try {
-									Database currDb = ExtLibUtil.getCurrentDatabase();
-									passedDoc = currDb.getDocumentByUNID(eventObj.getUnid());
-								} catch (Exception e) {
-									msg = msg + "\n\nCould not retrieve document but UNID was passed: "
-											+ eventObj.getUnid();
-								}
-							}
-							OpenLogUtil.logEvent(null, msg, severity, passedDoc);
-							try {
-								passedDoc.recycle();
-							} catch (Throwable e) {
-								// nothing to recycle here, move along
-							}
-						}
-					}
-					sessScope.put("openLogBean", null);
+				// sessionScope.openLogBean is only there if the developer has called openLogBean.addError(e,this)
+				OpenLogErrorHolder errList = (OpenLogErrorHolder) sessScope.get("openLogBean");
+				if (null != errList && errList.hasQueued()) {
+					// taken rather than the bean being removed, so nothing added by another request meanwhile is lost
+					logQueued(errList);
 				}
 			}
+			final boolean slow = tracker.isSlow();
+			if (slow) {
+				logSlowRequest(tracker);
+			}
+			if (tracker.hasCaptured() && (slow || tracker.isErrorLogged())) {
+				logCaptured(tracker, slow);
+			}
 		} catch (Throwable e) {
 			// We've hit an error in our code here, log the error
 			OpenLogUtil.logError(e);
+		} finally {
+			tracker.finish();
 		}
 	}
 
 	/**
-	 * This is getting VERY complex because of the variety of exceptions and tracking up the stack trace to find the
-	 * right class to get as much info as possible. Extracted into a separate method to make it more readable.
+	 * Logs everything queued in openLogBean in one batch. The current database is looked up once for any UNIDs
+	 * passed, the documents themselves are only opened by the LogDocumentWriter when the log documents are written
 	 * 
-	 * @param r
-	 *            requestScope map
+	 * @param errList
+	 *            OpenLogErrorHolder for the session
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 * @since 8.1.0
 	 */
-	private void processUncaughtException(Map<String, Object> r) {
+	private void logQueued(OpenLogErrorHolder errList) throws NotesException {
+		final OpenLogItem oli = OpenLogUtil.getOpenLogItem();
+		oli.checkCurrentDatabase();
+		final LinkedHashSet<EventError> errors = errList.takeErrors();
+		final LinkedHashSet<EventError> events = errList.takeEvents();
+		final List<LogRecord> records = new ArrayList<LogRecord>();
+		Database currDb = null;
+		// loop through the ArrayList of EventError objects
+		if (null != errors) {
+			for (EventError error : errors) {
+				String msg = "";
+				if (!"".equals(error.getMsg())) {
+					msg = msg + error.getMsg();
+				}
+				msg = msg + "Error on ";
+				if (null != error.getControlId()) {
+					msg = msg + error.getControlId();
+				}
+				if (null != error.getError()) {
+					msg = msg + ":\n\n" + error.getErrorMessage() + "\n\n" + error.getExpressionText();
+				}
+				Throwable ee = error.getError();
+				if (null == ee) {
+					ee = new Throwable();
+				}
+				final LogRecord record = createLogRecord(oli, ee, msg, convertSeverity(error.getSeverity()),
+						LogType.TYPE_ERROR);
+				if (null != record) {
+					currDb = setDoc(record, error.getUnid(), currDb);
+					records.add(record);
+				}
+			}
+		}
+		// loop through the ArrayList of EventError objects
+		if (null != events) {
+			for (EventError eventObj : events) {
+				String msg = "";
+				if (null != eventObj.getControlId() && !oli.isSuppressControlIdsForEvents()) {
+					msg = msg + "Event logged for " + eventObj.getControlId() + " ";
+				}
+				msg = msg + eventObj.getMsg();
+				final LogRecord record = createLogRecord(oli, new Throwable(""), msg, convertSeverity(eventObj
+						.getSeverity()), LogType.TYPE_EVENT);
+				if (null != record) {
+					currDb = setDoc(record, eventObj.getUnid(), currDb);
+					records.add(record);
+				}
+			}
+		}
+		final int overflow = errList.takeOverflow();
+		if (overflow > 0) {
+			final LogRecord record = createLogRecord(oli, new Throwable(""), overflow
+					+ " errors or events were not logged because openLogBean was full, see "
+					+ "xsp.openlog.errorHolder.capacity", Level.WARNING, LogType.TYPE_EVENT);
+			if (null != record) {
+				records.add(record);
+			}
+		}
+		oli.writeToLog(records, null, oli.getAsync());
+	}
+
+	/**
+	 * @return LogRecord for an error or event, or null if it is sampled out or held for the end of the request
+	 */
+	private LogRecord createLogRecord(OpenLogItem oli, Throwable ee, String msg, Level severity, LogType type)
+			throws NotesException {
+		if (LogType.TYPE_EVENT == type && RequestTracker.get().capture(severity, msg)) {
+			// held until the end of the request, see xsp.openlog.tailLevel
+			return null;
+		}
+		final double sampleWeight = oli.getSampleWeight(severity, type.getValue());
+		if (sampleWeight == 0) {
+			// sampled out, deliberately not logged
+			return null;
+		}
+		final LogRecord record = oli.createLogRecord(ee, msg, severity, type.getValue(), null);
+		record.setSampleWeight(sampleWeight);
+		return record;
+	}
+
+	/**
+	 * Logs the events held for the request as one event, at the level of the most severe. It is not sampled or
+	 * de-duplicated, because it is only logged for a request that logged an error or was slow
+	 * 
+	 * @param tracker
+	 *            RequestTracker for the request
+	 * @param slow
+	 *            boolean true if the request was slow
+	 * @throws NotesException
+	 *             when using core lotus.domino classes
+	 * @since 8.1.0
+	 */
+	private void logCaptured(RequestTracker tracker, boolean slow) throws NotesException {
+		final OpenLogItem oli = OpenLogUtil.getOpenLogItem();
+		oli.checkCurrentDatabase();
+		final String msg = tracker.describeCaptured(oli.getThisAgent(), slow ? "the request was slow"
+				: "an error was logged");
+		OpenLogStats.submitted();
+		final LogRecord record = oli.createLogRecord(new Throwable(""), msg, tracker.getCapturedLevel(),
+				LogType.TYPE_EVENT.getValue(), null);
+		// always its own document, never collapsed into an earlier one by xsp.openlog.dedupWindow
+		record.setFingerprint(null);
+		oli.writeToLog(record, null, oli.getAsync());
+	}
+
+	/**
+	 * Adds the document the error or event relates to, if a UNID was passed, from the current database
+	 * 
+	 * @return Database current database, looked up the first time it is needed
+	 */
+	private Database setDoc(LogRecord record, String unid, Database currDb) throws NotesException {
+		if (StringUtil.isEmpty(unid)) {
+			return currDb;
+		}
+		if (null == currDb) {
+			currDb = ExtLibUtil.getCurrentDatabase();
+		}
+		record.setDoc(currDb.getServer(), currDb.getFilePath(), unid, null);
+		return currDb;
+	}
+
+	/**
+	 * @return Object requestScope.error, set by XPages on the custom error page, or null
+	 * @since 8.1.0
+	 */
+	@SuppressWarnings("unchecked")
+	private Object getUncaughtError() {
+		final ExternalContext context = FacesContext.getCurrentInstance().getExternalContext();
+		final Object request = context.getRequest();
+		if (request instanceof ServletRequest) {
+			// requestScope is the request's attributes, read it directly rather than wrap it in a Map
+			return ((ServletRequest) request).getAttribute("error");
+		}
+		return ((Map<String, Object>) context.getRequestMap()).get("error");
+	}
+
+	/**
+	 * Logs an event for a request that exceeded xsp.openlog.slowRequest or xsp.openlog.slowPhase, with the time
+	 * spent in each phase
+	 * 
+	 * @param timer
+	 *            RequestTracker for the request
+	 * @since 8.1.0
+	 */
+	private void logSlowRequest(RequestTracker timer) {
+		// $$ajaxid is only sent for a partial refresh
+		final Object refreshId = FacesContext.getCurrentInstance().getExternalContext().getRequestParameterMap().get(
+				"$$ajaxid");
+		final String msg = timer.describe(OpenLogUtil.getOpenLogItem().getThisAgent(), (String) refreshId);
+		OpenLogUtil.logEvent(null, msg, Level.WARNING, null);
+	}
+
+	/**
+	 * Logs the uncaught exception the custom error page was displayed for
+	 * 
+	 * @param error
+	 *            Object requestScope.error
+	 */
+	private void processUncaughtException(Object error) {
 		// requestScope.error is not null, we're on the custom error page.
-		Object error = r.get("error");
 
 		// Set the agent (page we're on) to the *previous* page
 		OpenLogUtil.getOpenLogItem().setThisAgent(false);
 
+		UncaughtError uncaught = describeUncaughtException(error);
+		if (null != uncaught) {
+			OpenLogUtil.logErrorEx(uncaught.getError(), uncaught.getMessage(), null, null);
+		}
+	}
+
+	/**
+	 * This is getting VERY complex because of the variety of exceptions and tracking up the stack trace to find the
+	 * right class to get as much info as possible. Extracted into a separate method to make it more readable, and
+	 * separate from the logging so it doesn't need an XPages context.
+	 * 
+	 * @param error
+	 *            Object requestScope.error
+	 * @return UncaughtError Throwable and message to log, or null if the error is not something that can be logged
+	 * @since 8.1.0
+	 */
+	static UncaughtError describeUncaughtException(Object error) {
 		String msg = "";
 		if ("com.ibm.xsp.exception.EvaluationExceptionEx".equals(error.getClass().getName())) {
 			// EvaluationExceptionEx, so SSJS error is on a component property. 
@@ -191,7 +330,7 @@ public class OpenLogPhaseListener implements PhaseListener {
 						+ ":\n\n" + ie.getLocalizedMessage();
 
 			}
-			OpenLogUtil.logErrorEx(ee, msg, null, null);
+			return new UncaughtError(ee, msg);
 
 		} else if ("javax.faces.FacesException".equals(error.getClass().getName())) {
 			// FacesException, so error is on event or method in EL
@@ -230,7 +369,7 @@ public class OpenLogPhaseListener implements PhaseListener {
 			} else {
 				msg = msg + fe.getCause().getLocalizedMessage();
 			}
-			OpenLogUtil.logErrorEx(fe.getCause(), msg, null, null);
+			return new UncaughtError(fe.getCause(), msg);
 		} else if ("com.ibm.xsp.FacesExceptionEx".equals(error.getClass().getName())) {
 			// FacesException, so error is on event - doesn't get hit in examples. Can this still get hit??
 			FacesExceptionEx fe = (FacesExceptionEx) error;
@@ -241,10 +380,7 @@ public class OpenLogPhaseListener implements PhaseListener {
 
 					msg = msg + "NotesException - " + Integer.toString(ne.id) + " " + ne.text;
 				} else if ("java.io.IOException".equals(error.getClass().getName())) {
-					IOException e = (IOException) error;
-
 					msg = "Java IO:" + error.toString();
-					OpenLogUtil.logErrorEx(e.getCause(), msg, null, null);
 				} else {
 					EvaluationExceptionEx ee = (EvaluationExceptionEx) fe.getCause();
 					InterpretException ie = (InterpretException) ee.getCause();
@@ -261,25 +397,49 @@ public class OpenLogPhaseListener implements PhaseListener {
 					msg = fe.getLocalizedMessage();
 				}
 			}
-			OpenLogUtil.logErrorEx(fe.getCause(), msg, null, null);
+			return new UncaughtError(fe.getCause(), msg);
 
 		} else if ("javax.faces.el.PropertyNotFoundException".equals(error.getClass().getName())) {
 			// Hit by ErrorOnProperty.xsp
 			// Property not found exception, so error is on a component property
 			PropertyNotFoundException pe = (PropertyNotFoundException) error;
 			msg = "PropertyNotFoundException Error, cannot locate component:\n\n" + pe.getLocalizedMessage();
-			OpenLogUtil.logErrorEx(pe, msg, null, null);
+			return new UncaughtError(pe, msg);
 		} else {
 			try {
 				OpenLogUtil.print("Error type not found:" + error.getClass().getName());
 				msg = error.toString();
-				OpenLogUtil.logErrorEx((Throwable) error, msg, null, null);
+				return new UncaughtError((Throwable) error, msg);
 			} catch (Throwable t) {
 				t.printStackTrace();
+				return null;
 			}
 		}
 	}
 
+	/**
+	 * Throwable and message to log for an uncaught exception
+	 * 
+	 * @since 8.1.0
+	 */
+	static class UncaughtError {
+		private final Throwable error;
+		private final String message;
+
+		UncaughtError(Throwable error, String message) {
+			this.error = error;
+			this.message = message;
+		}
+
+		Throwable getError() {
+			return error;
+		}
+
+		String getMessage() {
+			return message;
+		}
+	}
+
 	/**
 	 * Converts an integer to a {@link java.util.logging.Level}
 	 * 
@@ -0,0 +1,219 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Counters and latency percentiles for OpenLog itself, shared by all applications on the server. Every counter
+ *        is a single atomic increment and durations go into a {@link LatencyHistogram}, so the cost to the request is
+ *        negligible. Write durations are for writing a batch to the sinks, on the request thread or, with
+ *        xsp.openlog.async=true, on a writer thread. With async, the time writeToLog spends queueing is kept
+ *        separately as the enqueue duration.<br>
+ *        <br>
+ *        Available through JMX as com.paulwithers.openLog:type=OpenLogStats and in XPages as the openLogStats
+ *        implicit object, e.g. <code>#{openLogStats.p99WriteMillis}</code>.
+ *
+ */
+public final class OpenLogStats implements OpenLogStatsMBean {
+	public static final String OBJECT_NAME = "com.paulwithers.openLog:type=OpenLogStats";
+	private static final long WINDOW = 60000;
+	private static final OpenLogStats instance_ = new OpenLogStats();
+
+	private final AtomicLong submitted_ = new AtomicLong();
+	private final AtomicLong written_ = new AtomicLong();
+	private final AtomicLong dropped_ = new AtomicLong();
+	private final AtomicLong sampled_ = new AtomicLong();
+	private final AtomicLong deduplicated_ = new AtomicLong();
+	private final AtomicLong debugErrors_ = new AtomicLong();
+	private final LatencyHistogram writeTimes_ = new LatencyHistogram(WINDOW);
+	private final LatencyHistogram enqueueTimes_ = new LatencyHistogram(WINDOW);
+
+	private OpenLogStats() {
+
+	}
+
+	/**
+	 * @return OpenLogStats for the server
+	 */
+	public static OpenLogStats getInstance() {
+		return instance_;
+	}
+
+	/**
+	 * Registers the MBean with the platform MBean server. Called when the plugin is started
+	 */
+	static void register() {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(instance_, name);
+			}
+		} catch (final Throwable t) {
+			LogDebug.debugPrint(t);
+		}
+	}
+
+	/**
+	 * Unregisters the MBean. Called when the plugin is stopped
+	 */
+	static void unregister() {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (final Throwable t) {
+			LogDebug.debugPrint(t);
+		}
+	}
+
+	static void submitted() {
+		instance_.submitted_.incrementAndGet();
+	}
+
+	static void written(int count) {
+		if (count > 0) {
+			instance_.written_.addAndGet(count);
+		}
+	}
+
+	static void dropped(int count) {
+		if (count > 0) {
+			instance_.dropped_.addAndGet(count);
+		}
+	}
+
+	static void sampled() {
+		instance_.sampled_.incrementAndGet();
+	}
+
+	static void deduplicated() {
+		instance_.deduplicated_.incrementAndGet();
+	}
+
+	static void debugError() {
+		instance_.debugErrors_.incrementAndGet();
+	}
+
+	/**
+	 * @param nanos
+	 *            long nanoseconds spent writing a batch to the sinks
+	 */
+	static void writeTime(long nanos) {
+		instance_.writeTimes_.record(nanos);
+	}
+
+	/**
+	 * @param nanos
+	 *            long nanoseconds spent in writeToLog queueing entries for the writer threads
+	 */
+	static void enqueueTime(long nanos) {
+		instance_.enqueueTimes_.record(nanos);
+	}
+
+	public long getSubmitted() {
+		return submitted_.get();
+	}
+
+	public long getWritten() {
+		return written_.get();
+	}
+
+	public long getDropped() {
+		return dropped_.get();
+	}
+
+	public long getSampled() {
+		return sampled_.get();
+	}
+
+	public long getDeduplicated() {
+		return deduplicated_.get();
+	}
+
+	public long getDebugErrors() {
+		return debugErrors_.get();
+	}
+
+	public int getQueueDepth() {
+		return OpenLogWriter.getQueued();
+	}
+
+	public double getMeanWriteMillis() {
+		return writeTimes_.getMeanMillis();
+	}
+
+	public double getP50WriteMillis() {
+		return writeTimes_.getPercentileMillis(50);
+	}
+
+	public double getP95WriteMillis() {
+		return writeTimes_.getPercentileMillis(95);
+	}
+
+	public double getP99WriteMillis() {
+		return writeTimes_.getPercentileMillis(99);
+	}
+
+	public double getMaxWriteMillis() {
+		return writeTimes_.getMaxMillis();
+	}
+
+	public double getMeanEnqueueMillis() {
+		return enqueueTimes_.getMeanMillis();
+	}
+
+	public double getP50EnqueueMillis() {
+		return enqueueTimes_.getPercentileMillis(50);
+	}
+
+	public double getP95EnqueueMillis() {
+		return enqueueTimes_.getPercentileMillis(95);
+	}
+
+	public double getP99EnqueueMillis() {
+		return enqueueTimes_.getPercentileMillis(99);
+	}
+
+	public double getMaxEnqueueMillis() {
+		return enqueueTimes_.getMaxMillis();
+	}
+
+	public void reset() {
+		submitted_.set(0);
+		written_.set(0);
+		dropped_.set(0);
+		sampled_.set(0);
+		deduplicated_.set(0);
+		debugErrors_.set(0);
+		writeTimes_.reset();
+		enqueueTimes_.reset();
+	}
+
+}
@@ -0,0 +1,122 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        JMX interface of {@link OpenLogStats}, registered as com.paulwithers.openLog:type=OpenLogStats
+ *
+ */
+public interface OpenLogStatsMBean {
+
+	/**
+	 * @return long entries logged, including events then sampled out
+	 */
+	long getSubmitted();
+
+	/**
+	 * @return long entries written, counted once for each sink written to
+	 */
+	long getWritten();
+
+	/**
+	 * @return long entries lost because the queue or spool was full or they could not be written or spooled
+	 */
+	long getDropped();
+
+	/**
+	 * @return long events not logged because of sampling or rate limiting
+	 */
+	long getSampled();
+
+	/**
+	 * @return long entries not written because they repeated an entry within xsp.openlog.dedupWindow
+	 */
+	long getDeduplicated();
+
+	/**
+	 * @return long errors within OpenLog itself, passed to debugPrint
+	 */
+	long getDebugErrors();
+
+	/**
+	 * @return int entries waiting for the asynchronous writer
+	 */
+	int getQueueDepth();
+
+	/**
+	 * @return double mean milliseconds to write a batch of entries to the sinks, by writeToLog on the request thread
+	 *         or by a writer thread, over the last one to two minutes
+	 */
+	double getMeanWriteMillis();
+
+	/**
+	 * @return double median milliseconds to write a batch of entries, over the last one to two minutes
+	 */
+	double getP50WriteMillis();
+
+	/**
+	 * @return double 95th percentile of milliseconds to write a batch of entries, over the last one to two minutes
+	 */
+	double getP95WriteMillis();
+
+	/**
+	 * @return double 99th percentile of milliseconds to write a batch of entries, over the last one to two minutes
+	 */
+	double getP99WriteMillis();
+
+	/**
+	 * @return double longest milliseconds to write a batch of entries, over the last one to two minutes
+	 */
+	double getMaxWriteMillis();
+
+	/**
+	 * @return double mean milliseconds spent in writeToLog queueing entries for the writer threads, with
+	 *         xsp.openlog.async=true, over the last one to two minutes
+	 */
+	double getMeanEnqueueMillis();
+
+	/**
+	 * @return double median milliseconds spent queueing entries, over the last one to two minutes
+	 */
+	double getP50EnqueueMillis();
+
+	/**
+	 * @return double 95th percentile of milliseconds spent queueing entries, over the last one to two minutes
+	 */
+	double getP95EnqueueMillis();
+
+	/**
+	 * @return double 99th percentile of milliseconds spent queueing entries, over the last one to two minutes
+	 */
+	double getP99EnqueueMillis();
+
+	/**
+	 * @return double longest milliseconds spent queueing entries, over the last one to two minutes
+	 */
+	double getMaxEnqueueMillis();
+
+	/**
+	 * Sets every counter back to zero and discards the durations recorded
+	 */
+	void reset();
+
+}
@@ -18,8 +18,11 @@ package com.paulwithers.openLog;
 
  */
 
+import java.util.Map;
 import java.util.logging.Level;
 
+import javax.faces.context.FacesContext;
+
 import com.ibm.commons.util.StringUtil;
 import com.ibm.xsp.application.ApplicationEx;
 import com.ibm.xsp.extlib.util.ExtLibUtil;
@@ -32,12 +35,32 @@ import lotus.domino.Session;
  * @author Paul Withers
  * @since 6.0.0
  * 
- *        Utility class to allow access without OpenLogItem needing to have static methods
+ *        Utility class to allow access without OpenLogItem needing to have static methods.<br>
+ *        <br>
+ *        Since 8.1.0 each request gets its own OpenLogItem, so concurrent requests never share the fields of an
+ *        error / event being logged. The only state shared between requests is in thread-safe caches, e.g.
+ *        {@link OpenLogConfig}, so logging needs no locks.
  * 
  */
 public class OpenLogUtil {
+	private static final String REQUEST_KEY = "openLogItem";
+
+	/**
+	 * Diagnostics for the Domino-free core, installed by the {@link Activator}
+	 * 
+	 * @since 8.1.0
+	 */
+	static final LogDiagnostics DIAGNOSTICS = new LogDiagnostics() {
+
+		public void print(String msg) {
+			OpenLogUtil.print(msg);
+		}
+
+		public void debugPrint(Throwable t) {
+			OpenLogUtil.debugPrint(t);
+		}
 
-	private transient static OpenLogItem oli_;
+	};
 
 	/**
 	 * 
@@ -47,16 +70,25 @@ public class OpenLogUtil {
 	}
 
 	/**
-	 * Helper method to give easy access to the OpenLogItem
+	 * Helper method to give easy access to the OpenLogItem for the current request. Outside of a request, e.g. on a
+	 * background thread, a new OpenLogItem is returned on every call
 	 * 
 	 * @return OpenLogItem
 	 * @since 6.0.0
 	 */
+	@SuppressWarnings("unchecked")
 	public static OpenLogItem getOpenLogItem() {
-		if (null == oli_) {
-			oli_ = new OpenLogItem();
+		final FacesContext context = FacesContext.getCurrentInstance();
+		if (null == context) {
+			return new OpenLogItem();
+		}
+		final Map<String, Object> requestScope = context.getExternalContext().getRequestMap();
+		OpenLogItem oli = (OpenLogItem) requestScope.get(REQUEST_KEY);
+		if (null == oli) {
+			oli = new OpenLogItem();
+			requestScope.put(REQUEST_KEY, oli);
 		}
-		return oli_;
+		return oli;
 	}
 
 	/**
@@ -177,10 +209,16 @@ public class OpenLogUtil {
 		if ((ee == null)) {
 			return;
 		}
+		OpenLogStats.debugError();
 
 		try {
 			// debug level of 1 prints the basic error message
-			int debugLevel = Integer.parseInt(getXspProperty("xsp.openlog.debugLevel", "2"));
+			int debugLevel = 2;
+			try {
+				debugLevel = OpenLogConfig.getCurrent().getDebugLevel();
+			} catch (Throwable e1) {
+				// no XPages context, e.g. OpenLogWriter thread, or no XPages classes, so use the default
+			}
 			if (debugLevel >= 1) {
 				String debugMsg = ee.toString();
 				try {
@@ -188,7 +226,8 @@ public class OpenLogUtil {
 						NotesException ne = (NotesException) ee;
 						debugMsg = "Notes error " + ne.id + ": " + ne.text;
 					}
-				} catch (Exception e2) {
+				} catch (Throwable e2) {
+					// no Domino classes
 				}
 				System.err.println("XOL_DEBUG error: " + debugMsg);
 			}
@@ -203,6 +242,14 @@ public class OpenLogUtil {
 		}
 	}
 
+	/**
+	 * @return Map applicationScope of the current application, where {@link OpenLogConfig} keeps its settings
+	 * @since 8.1.0
+	 */
+	static Map<String, Object> getApplicationScope() {
+		return ExtLibUtil.getApplicationScope();
+	}
+
 	/**
 	 * Print out a message prefixed by "XOL: "
 	 * 
@@ -231,7 +278,7 @@ public class OpenLogUtil {
 			} else {
 				return defaultValue;
 			}
-		} catch (NotesException e) {
+		} catch (Exception e) {
 			debugPrint(e);
 			return defaultValue;
 		}
@@ -239,7 +286,8 @@ public class OpenLogUtil {
 
 	/**
 	 * Gets a proeprty value from xsp.properties either in NSF or on server. If it's not found, it falls back to looking
-	 * to notes.ini variable. Moved from OpenLogItem in 6.0.0
+	 * to notes.ini variable. Moved from OpenLogItem in 6.0.0. OpenLog's own settings should be read from
+	 * {@link OpenLogConfig#getCurrent()}, which only calls this when the settings are loaded
 	 * 
 	 * @param propertyName
 	 *            String property to retrieve from notes.ini
@@ -0,0 +1,234 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Background writer used when xsp.openlog.async=true. The request thread only captures a {@link LogRecord}
+ *        and adds it to a bounded queue. Dedicated threads pass the records in batches to the {@link LogSink}s
+ *        configured in xsp.openlog.sinks, see {@link LogSinks}. The writer itself has no dependency on Domino, the
+ *        "nsf" sink initialises its threads for Notes.<br>
+ *        <br>
+ *        The writer is shared by all applications on the server, so the following xsp.properties / notes.ini
+ *        settings are read from the first application to log asynchronously:
+ *        <ul>
+ *        <li>xsp.openlog.async.queueSize - maximum number of records waiting to be written, default 1000</li>
+ *        <li>xsp.openlog.async.threads - number of writer threads, default 1</li>
+ *        <li>xsp.openlog.async.shutdownTimeout - milliseconds to keep writing queued records when the plugin is
+ *        stopped, default 10000</li>
+ *        <li>xsp.openlog.async.batchSize - maximum number of records written in one batch, default 50</li>
+ *        <li>xsp.openlog.async.flushInterval - milliseconds to wait for a batch to fill before writing it, default
+ *        500</li>
+ *        </ul>
+ *
+ */
+public class OpenLogWriter {
+	private static OpenLogWriter instance_;
+
+	private final BlockingQueue<LogRecord> queue_;
+	private final List<Worker> workers_ = new ArrayList<Worker>();
+	private final long shutdownTimeout_;
+	private final int batchSize_;
+	private final long flushInterval_;
+	private volatile boolean running_ = true;
+	private volatile long deadline_ = Long.MAX_VALUE;
+
+	private OpenLogWriter(int queueSize, int threads, long shutdownTimeout, int batchSize, long flushInterval) {
+		queue_ = new ArrayBlockingQueue<LogRecord>(queueSize);
+		shutdownTimeout_ = shutdownTimeout;
+		batchSize_ = batchSize;
+		flushInterval_ = flushInterval;
+		for (int i = 0; i < threads; i++) {
+			Worker worker = new Worker("OpenLog Writer " + (i + 1));
+			workers_.add(worker);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Gets the writer, starting it if it is not already running
+	 *
+	 * @param config
+	 *            LogSettings of the application logging, only read if the writer is started
+	 * @return OpenLogWriter shared writer
+	 */
+	static synchronized OpenLogWriter getInstance(LogSettings config) {
+		if (null == instance_) {
+			instance_ = new OpenLogWriter(config.getAsyncQueueSize(), config.getAsyncThreads(), config
+					.getAsyncShutdownTimeout(), config.getAsyncBatchSize(), config.getAsyncFlushInterval());
+		}
+		return instance_;
+	}
+
+	/**
+	 * Stops the writer, if it was started. Queued records continue to be written until the queue is empty or
+	 * xsp.openlog.async.shutdownTimeout has elapsed. Called when the plugin is stopped.
+	 */
+	public static void shutdown() {
+		OpenLogWriter writer;
+		synchronized (OpenLogWriter.class) {
+			writer = instance_;
+			instance_ = null;
+		}
+		if (null != writer) {
+			writer.stop();
+		}
+	}
+
+	/**
+	 * Adds a record to the queue without waiting
+	 *
+	 * @param record
+	 *            LogRecord to write
+	 * @return boolean false if the writer is stopping or the queue is full, in which case the record is discarded
+	 */
+	boolean submit(LogRecord record) {
+		if (running_ && queue_.offer(record)) {
+			return true;
+		}
+		LogDebug.print("OpenLog writer is full or stopping, could not log: " + record.getErrorMessage());
+		LogDeduplicator.unsaved(record);
+		OpenLogStats.dropped(1);
+		return false;
+	}
+
+	/**
+	 * @return int number of records waiting to be written
+	 */
+	public int getQueueDepth() {
+		return queue_.size();
+	}
+
+	/**
+	 * @return int number of records waiting to be written, 0 if the writer is not running
+	 */
+	static synchronized int getQueued() {
+		return null == instance_ ? 0 : instance_.getQueueDepth();
+	}
+
+	private void stop() {
+		deadline_ = System.currentTimeMillis() + shutdownTimeout_;
+		running_ = false;
+		for (Worker worker : workers_) {
+			long wait = deadline_ - System.currentTimeMillis();
+			try {
+				if (wait > 0) {
+					worker.join(wait);
+				}
+				if (worker.isAlive()) {
+					worker.interrupt();
+				}
+			} catch (InterruptedException e) {
+				worker.interrupt();
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (!queue_.isEmpty()) {
+			OpenLogStats.dropped(queue_.size());
+			LogDebug.print(queue_.size() + " OpenLog entries could not be written before shutdown");
+		}
+	}
+
+	private boolean isFinished() {
+		if (running_) {
+			return false;
+		}
+		return queue_.isEmpty() || System.currentTimeMillis() > deadline_;
+	}
+
+	/**
+	 * Waits for the next batch of records. Returns as soon as batchSize records are available or flushInterval has
+	 * elapsed since the first one was taken
+	 *
+	 * @param batch
+	 *            List to add the records to
+	 * @throws InterruptedException
+	 *             if the shutdown timeout has elapsed
+	 */
+	private void takeBatch(List<LogRecord> batch) throws InterruptedException {
+		final LogRecord first = queue_.poll(flushInterval_, TimeUnit.MILLISECONDS);
+		if (null == first) {
+			return;
+		}
+		batch.add(first);
+		final long flushAt = System.currentTimeMillis() + flushInterval_;
+		while (batch.size() < batchSize_) {
+			queue_.drainTo(batch, batchSize_ - batch.size());
+			final long wait = flushAt - System.currentTimeMillis();
+			if (batch.size() >= batchSize_ || wait <= 0 || !running_) {
+				break;
+			}
+			final LogRecord next = queue_.poll(wait, TimeUnit.MILLISECONDS);
+			if (null == next) {
+				break;
+			}
+			batch.add(next);
+		}
+	}
+
+	/**
+	 * Writer thread, passing each batch to the active {@link LogSink}s. Sinks that need per-thread resources, such as
+	 * a Notes Session, create them on first use and free them in {@link LogSink#release()} when the thread stops.
+	 */
+	private class Worker extends Thread {
+
+		Worker(String name) {
+			super(name);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			final List<LogRecord> batch = new ArrayList<LogRecord>(batchSize_);
+			long flushedAt = System.currentTimeMillis();
+			try {
+				while (!isFinished()) {
+					batch.clear();
+					takeBatch(batch);
+					final long now = System.currentTimeMillis();
+					final long start = System.nanoTime();
+					// when idle, only as often as repeat counts are updated
+					if (!batch.isEmpty()) {
+						LogSinks.write(batch);
+					} else if (now - flushedAt < LogDeduplicator.UPDATE_INTERVAL) {
+						continue;
+					}
+					LogSinks.flush();
+					flushedAt = now;
+					if (!batch.isEmpty()) {
+						OpenLogStats.writeTime(System.nanoTime() - start);
+					}
+				}
+			} catch (final InterruptedException e) {
+				// shutdown timeout elapsed
+			} finally {
+				LogSinks.release();
+			}
+		}
+	}
+
+}
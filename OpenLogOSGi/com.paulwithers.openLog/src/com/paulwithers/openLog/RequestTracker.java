@@ -0,0 +1,358 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.logging.Level;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        State of the request being processed on a thread, for {@link OpenLogPhaseListener}. Each request thread
+ *        reuses its own tracker, so the listener does no work for a request that logs nothing:
+ *        <ul>
+ *        <li>whether RENDER_RESPONSE has started, so errors added while rendering get a FacesMessage straight
+ *        away</li>
+ *        <li>the time spent in each JSF phase, to log slow requests. Timing a request is a few System.nanoTime() calls
+ *        with no allocation, only a slow request builds a description</li>
+ *        <li>events at xsp.openlog.tailLevel or below, held in memory until the end of the request. If the request
+ *        logged an error or was slow they are logged as one event, otherwise they are discarded. The buffer is
+ *        created once per thread and holds the level, time and message of the latest xsp.openlog.tailEvents
+ *        events, so a request that ends well costs no more than storing three references per event</li>
+ *        </ul>
+ *        These settings are read from the application of each request, at the start of RESTORE_VIEW:
+ *        <ul>
+ *        <li>xsp.openlog.slowRequest - milliseconds for the whole request, from the start of RESTORE_VIEW to the end
+ *        of RENDER_RESPONSE, after which an event is logged. Default 0, off</li>
+ *        <li>xsp.openlog.slowPhase - milliseconds for any one phase after which an event is logged. Default 0, off</li>
+ *        <li>xsp.openlog.tailLevel - e.g. FINE, events at this level or below are held for the end of the request.
+ *        Default none, every event is logged straight away. Events are only held between RESTORE_VIEW and the end of
+ *        RENDER_RESPONSE, a request that ends early, e.g. with a redirect, discards them</li>
+ *        <li>xsp.openlog.tailEvents - maximum events held for a request, older ones are discarded. Default 200</li>
+ *        </ul>
+ *
+ */
+class RequestTracker {
+	static final int RESTORE_VIEW = 1;
+	static final int RENDER_RESPONSE = 6;
+	private static final String[] PHASE_NAMES = { "", "RESTORE_VIEW", "APPLY_REQUEST_VALUES", "PROCESS_VALIDATIONS",
+			"UPDATE_MODEL_VALUES", "INVOKE_APPLICATION", "RENDER_RESPONSE" };
+	private static final long NANOS_PER_MILLI = 1000000L;
+	private static final ThreadLocal<RequestTracker> trackers_ = new ThreadLocal<RequestTracker>() {
+		@Override
+		protected RequestTracker initialValue() {
+			return new RequestTracker();
+		}
+	};
+
+	private boolean configured_;
+	private boolean enabled_;
+	private long requestThreshold_;
+	private long phaseThreshold_;
+	private int tailLevel_ = Integer.MIN_VALUE;
+	private int tailEvents_;
+	private final long[] starts_ = new long[PHASE_NAMES.length];
+	private final long[] durations_ = new long[PHASE_NAMES.length];
+	private long requestStart_;
+	private boolean running_;
+	private boolean rendering_;
+	private boolean capturing_;
+	private boolean errorLogged_;
+	private long captureStart_;
+	private long[] captureTimes_;
+	private Level[] captureLevels_;
+	private String[] captureMessages_;
+	private int captured_;
+
+	private RequestTracker() {
+
+	}
+
+	/**
+	 * @return boolean true if the settings have been read for the current request
+	 */
+	boolean isConfigured() {
+		return configured_;
+	}
+
+	/**
+	 * Reads the thresholds and tail settings for the request starting
+	 *
+	 * @param config
+	 *            OpenLogConfig of the request's application
+	 */
+	void configure(OpenLogConfig config) {
+		requestThreshold_ = NANOS_PER_MILLI * config.getSlowRequest();
+		phaseThreshold_ = NANOS_PER_MILLI * config.getSlowPhase();
+		enabled_ = requestThreshold_ > 0 || phaseThreshold_ > 0;
+		final Level tailLevel = config.getTailLevel();
+		if (null != tailLevel && Level.OFF != tailLevel) {
+			tailEvents_ = config.getTailEvents();
+			tailLevel_ = tailLevel.intValue();
+		} else {
+			tailLevel_ = Integer.MIN_VALUE;
+		}
+		configured_ = true;
+	}
+
+	/**
+	 * @return boolean true if either threshold is set for the current request
+	 */
+	boolean isEnabled() {
+		return enabled_;
+	}
+
+	/**
+	 * @return RequestTracker for the current thread
+	 */
+	static RequestTracker get() {
+		return trackers_.get();
+	}
+
+	/**
+	 * @return boolean true if the request is in RENDER_RESPONSE
+	 */
+	boolean isRendering() {
+		return rendering_;
+	}
+
+	/**
+	 * @param phase
+	 *            int ordinal of the phase starting
+	 */
+	void beforePhase(int phase) {
+		rendering_ = RENDER_RESPONSE == phase;
+		if (RESTORE_VIEW == phase && Integer.MIN_VALUE != tailLevel_) {
+			startCapture();
+		}
+		if (enabled_) {
+			start(phase);
+		}
+	}
+
+	/**
+	 * @param phase
+	 *            int ordinal of the phase ending
+	 */
+	void afterPhase(int phase) {
+		if (enabled_) {
+			end(phase);
+		}
+	}
+
+	/**
+	 * Clears the state at the end of RENDER_RESPONSE, once anything for the request has been logged
+	 */
+	void finish() {
+		rendering_ = false;
+		running_ = false;
+		configured_ = false;
+		stopCapture();
+	}
+
+	/**
+	 * Records that an error has been logged on this thread, so events held for the request are logged
+	 */
+	void setErrorLogged() {
+		errorLogged_ = true;
+	}
+
+	/**
+	 * @return boolean true if an error has been logged during the request
+	 */
+	boolean isErrorLogged() {
+		return errorLogged_;
+	}
+
+	/**
+	 * Holds an event until the end of the request, if it is at xsp.openlog.tailLevel or below
+	 *
+	 * @param severity
+	 *            Level of the event
+	 * @param message
+	 *            String message of the event
+	 * @return boolean true if the event is held, false if it should be logged now
+	 */
+	boolean capture(Level severity, String message) {
+		if (!capturing_ || null == severity || severity.intValue() > tailLevel_) {
+			return false;
+		}
+		if (null == captureMessages_ || captureMessages_.length != tailEvents_) {
+			captureTimes_ = new long[tailEvents_];
+			captureLevels_ = new Level[tailEvents_];
+			captureMessages_ = new String[tailEvents_];
+			captured_ = 0;
+		}
+		// a ring, so the latest events before an error are kept
+		final int slot = captured_ % captureMessages_.length;
+		captureTimes_[slot] = System.nanoTime();
+		captureLevels_[slot] = severity;
+		captureMessages_[slot] = message;
+		captured_++;
+		return true;
+	}
+
+	/**
+	 * @return boolean true if events have been held for the request
+	 */
+	boolean hasCaptured() {
+		return capturing_ && captured_ > 0;
+	}
+
+	/**
+	 * @return Level most severe of the events held for the request
+	 */
+	Level getCapturedLevel() {
+		Level level = Level.FINEST;
+		final int count = Math.min(captured_, captureLevels_.length);
+		for (int i = 0; i < count; i++) {
+			if (captureLevels_[i].intValue() > level.intValue()) {
+				level = captureLevels_[i];
+			}
+		}
+		return level;
+	}
+
+	/**
+	 * Stops holding events, so the event describing them is logged, and describes those held
+	 *
+	 * @param page
+	 *            String page the request was for
+	 * @param reason
+	 *            String why they are being logged
+	 * @return String message for the event, with the time since the start of the request, level and message of
+	 *         each event held
+	 */
+	String describeCaptured(String page, String reason) {
+		capturing_ = false;
+		final int count = Math.min(captured_, captureMessages_.length);
+		final int first = captured_ - count;
+		final StringBuilder msg = new StringBuilder(64 * (count + 1));
+		msg.append(captured_).append(" events held for ").append(page).append(", logged because ").append(reason);
+		if (first > 0) {
+			msg.append(", the first ").append(first).append(" were discarded, see xsp.openlog.tailEvents");
+		}
+		for (int i = first; i < captured_; i++) {
+			final int slot = i % captureMessages_.length;
+			msg.append("\n+").append((captureTimes_[slot] - captureStart_) / NANOS_PER_MILLI).append("ms ").append(
+					captureLevels_[slot].getName()).append(" ").append(captureMessages_[slot]);
+		}
+		return msg.toString();
+	}
+
+	private void startCapture() {
+		stopCapture();
+		captureStart_ = System.nanoTime();
+		capturing_ = true;
+	}
+
+	private void stopCapture() {
+		capturing_ = false;
+		errorLogged_ = false;
+		if (captured_ > 0) {
+			// release the messages, the arrays are reused
+			final int count = Math.min(captured_, captureMessages_.length);
+			for (int i = 0; i < count; i++) {
+				captureLevels_[i] = null;
+				captureMessages_[i] = null;
+			}
+			captured_ = 0;
+		}
+	}
+
+	private void start(int phase) {
+		final long now = System.nanoTime();
+		if (RESTORE_VIEW == phase || !running_) {
+			for (int i = 0; i < durations_.length; i++) {
+				starts_[i] = 0;
+				durations_[i] = 0;
+			}
+			requestStart_ = now;
+			running_ = true;
+		}
+		if (phase > 0 && phase < starts_.length) {
+			starts_[phase] = now;
+		}
+	}
+
+	private void end(int phase) {
+		if (running_ && phase > 0 && phase < starts_.length && starts_[phase] != 0) {
+			durations_[phase] = System.nanoTime() - starts_[phase];
+		}
+	}
+
+	/**
+	 * @return boolean true if the request or any phase exceeded its threshold
+	 */
+	boolean isSlow() {
+		if (!running_) {
+			return false;
+		}
+		if (requestThreshold_ > 0 && getTotal() > requestThreshold_) {
+			return true;
+		}
+		if (phaseThreshold_ > 0) {
+			for (final long duration : durations_) {
+				if (duration > phaseThreshold_) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return long nanoseconds from the start of the request to the end of the last phase timed
+	 */
+	private long getTotal() {
+		long end = requestStart_;
+		for (int i = 1; i < starts_.length; i++) {
+			if (starts_[i] != 0) {
+				end = Math.max(end, starts_[i] + durations_[i]);
+			}
+		}
+		return end - requestStart_;
+	}
+
+	/**
+	 * @param page
+	 *            String page the request was for
+	 * @param refreshId
+	 *            String id of the partial refresh target or null for a full refresh
+	 * @return String message for the slow request event, with the time of each phase
+	 */
+	String describe(String page, String refreshId) {
+		final StringBuilder msg = new StringBuilder(256);
+		msg.append("Slow request, ").append(getTotal() / NANOS_PER_MILLI).append("ms on ").append(page);
+		if (null != refreshId && refreshId.length() > 0) {
+			msg.append(", partial refresh of ").append(refreshId);
+		}
+		for (int i = 1; i < starts_.length; i++) {
+			if (starts_[i] != 0) {
+				msg.append("\n").append(PHASE_NAMES[i]).append(": ").append(durations_[i] / NANOS_PER_MILLI).append(
+						"ms");
+				if (phaseThreshold_ > 0 && durations_[i] > phaseThreshold_) {
+					msg.append(" (slow)");
+				}
+			}
+		}
+		return msg.toString();
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Caches the access level, roles and server / client version logged for a user in a database, so a burst of
+ *        log entries for the same user and application only evaluates @UserRoles once. Entries are keyed by effective
+ *        user name and database replica ID and expire after xsp.openlog.securityCacheTtl seconds (default 60, 0 to
+ *        disable the cache).
+ *
+ */
+class SecurityContextCache {
+	private static final int MAX_ENTRIES = 1000;
+	private static final ConcurrentHashMap<String, Entry> entries_ = new ConcurrentHashMap<String, Entry>();
+
+	private SecurityContextCache() {
+
+	}
+
+	/**
+	 * @param effectiveName
+	 *            String effective user name
+	 * @param replicaId
+	 *            String replica ID of the database being logged from
+	 * @return String cache key
+	 */
+	static String getKey(String effectiveName, String replicaId) {
+		return effectiveName + "!!" + replicaId;
+	}
+
+	/**
+	 * @param key
+	 *            String from {@link #getKey(String, String)}
+	 * @return Entry cached for the user and database, or null if there is none or it has expired
+	 */
+	static Entry get(String key) {
+		final Entry entry = entries_.get(key);
+		if (null == entry) {
+			return null;
+		}
+		if (entry.isExpired(System.currentTimeMillis())) {
+			entries_.remove(key, entry);
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * @param key
+	 *            String from {@link #getKey(String, String)}
+	 * @param accessLevel
+	 *            String access level logged
+	 * @param userRoles
+	 *            List of roles logged, copied
+	 * @param clientVersion
+	 *            List server / client version logged, copied
+	 * @param ttlSeconds
+	 *            int seconds to cache for, 0 not to cache
+	 * @return Entry for the values passed
+	 */
+	static Entry put(String key, String accessLevel, List<String> userRoles, List<String> clientVersion,
+			int ttlSeconds) {
+		final long now = System.currentTimeMillis();
+		final Entry entry = new Entry(accessLevel, userRoles, clientVersion, now + 1000L * ttlSeconds);
+		if (ttlSeconds > 0) {
+			if (entries_.size() >= MAX_ENTRIES) {
+				removeExpired(now);
+				if (entries_.size() >= MAX_ENTRIES) {
+					entries_.clear();
+				}
+			}
+			entries_.put(key, entry);
+		}
+		return entry;
+	}
+
+	private static void removeExpired(long now) {
+		for (final Iterator<Entry> it = entries_.values().iterator(); it.hasNext();) {
+			if (it.next().isExpired(now)) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Security context of a user in a database
+	 */
+	static class Entry {
+		private final String accessLevel_;
+		private final List<String> userRoles_;
+		private final List<String> clientVersion_;
+		private final long expires_;
+
+		Entry(String accessLevel, List<String> userRoles, List<String> clientVersion, long expires) {
+			accessLevel_ = accessLevel;
+			// the caller's lists may change, and every record logged for the user shares these
+			userRoles_ = null == userRoles ? null : Collections.unmodifiableList(new ArrayList<String>(userRoles));
+			clientVersion_ = null == clientVersion ? null : Collections.unmodifiableList(new ArrayList<String>(
+					clientVersion));
+			expires_ = expires;
+		}
+
+		private boolean isExpired(long now) {
+			return now > expires_;
+		}
+
+		/**
+		 * @return String access level, e.g. "4: Editor"
+		 */
+		String getAccessLevel() {
+			return accessLevel_;
+		}
+
+		/**
+		 * @return unmodifiable List of roles
+		 */
+		List<String> getUserRoles() {
+			return userRoles_;
+		}
+
+		/**
+		 * @return unmodifiable List server / client version
+		 */
+		List<String> getClientVersion() {
+			return clientVersion_;
+		}
+	}
+
+}
@@ -0,0 +1,240 @@
+package com.paulwithers.openLog;
+
+/*
+
+ <!--
+ Copyright 2026 Paul Withers
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and limitations under the License
+ -->
+
+ */
+
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * @author Paul Withers
+ * @since 8.1.0
+ *
+ *        Builds the LogStackTrace lines directly from the StackTraceElements of a Throwable and its causes, instead of
+ *        printing the whole trace to a String and tokenizing it. Lines are the same as printStackTrace, trimmed:
+ *        <code>java.lang.Exception: message</code>, <code>at com.Class.method(Class.java:10)</code>,
+ *        <code>Suppressed: ...</code>, <code>Caused by: ...</code> and <code>... 5 more</code>, in the same order.
+ *        Suppressed exceptions are only available on Java 7 and later, so they are read by reflection and left out on
+ *        earlier JVMs.<br>
+ *        <br>
+ *        xsp.openlog.stackMaxDepth limits the frames logged for each Throwable and xsp.openlog.stackMaxCauses the
+ *        number of causes and suppressed exceptions followed. Both default to 0, no limit.
+ *
+ */
+class StackTraceCapture {
+	// Safety net for cause chains that loop back on themselves
+	private static final int CAUSE_LIMIT = 100;
+	private static final Throwable[] NONE = new Throwable[0];
+	// Throwable.getSuppressed(), Java 7+, or null
+	private static final Method GET_SUPPRESSED = getSuppressedMethod();
+
+	private static final ThreadLocal<StringBuilder> builder_ = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
+	private final Vector<String> v_;
+	private final StringBuilder sb_;
+	private final int maxDepth_;
+	private final Map<Throwable, Boolean> dejaVu_ = new IdentityHashMap<Throwable, Boolean>();
+	private int causesLeft_;
+	private boolean truncated_;
+
+	private StackTraceCapture(Vector<String> v, int maxDepth, int maxCauses) {
+		v_ = v;
+		sb_ = builder_.get();
+		maxDepth_ = maxDepth;
+		causesLeft_ = (maxCauses > 0 && maxCauses < CAUSE_LIMIT) ? maxCauses : CAUSE_LIMIT;
+	}
+
+	private static Method getSuppressedMethod() {
+		try {
+			return Throwable.class.getMethod("getSuppressed");
+		} catch (final Throwable t) {
+			// Java 6 or earlier
+			return null;
+		}
+	}
+
+	/**
+	 * @param t
+	 *            Throwable
+	 * @return Throwable[] exceptions suppressed by it, empty if there are none or the JVM doesn't support them
+	 */
+	private static Throwable[] getSuppressed(Throwable t) {
+		if (null == GET_SUPPRESSED) {
+			return NONE;
+		}
+		try {
+			final Throwable[] suppressed = (Throwable[]) GET_SUPPRESSED.invoke(t);
+			return null == suppressed ? NONE : suppressed;
+		} catch (final Throwable e) {
+			return NONE;
+		}
+	}
+
+	/**
+	 * @param ee
+	 *            Throwable to get the stack trace for
+	 * @param skip
+	 *            int number of lines to skip from the start
+	 * @param maxDepth
+	 *            int maximum frames for each Throwable, 0 for no limit
+	 * @param maxCauses
+	 *            int maximum causes and suppressed exceptions to follow, 0 for no limit
+	 * @return Vector of stack trace lines
+	 */
+	static Vector<String> capture(Throwable ee, int skip, int maxDepth, int maxCauses) {
+		final StackTraceElement[] trace = ee.getStackTrace();
+		final Vector<String> v = new Vector<String>(trace.length + 8);
+		final StackTraceCapture capture = new StackTraceCapture(v, maxDepth, maxCauses);
+
+		capture.dejaVu_.put(ee, Boolean.TRUE);
+		addHeader(v, ee.toString());
+		capture.addFrames(trace, trace.length);
+		capture.addEnclosed(ee, trace);
+		if (capture.truncated_) {
+			v.addElement("... further causes not logged");
+		}
+
+		if (skip > 0) {
+			if (skip >= v.size()) {
+				v.clear();
+			} else {
+				v.subList(0, skip).clear();
+			}
+		}
+		return v;
+	}
+
+	/**
+	 * Adds the suppressed exceptions and then the cause of a Throwable, as printStackTrace does
+	 *
+	 * @param t
+	 *            Throwable whose frames have been added
+	 * @param trace
+	 *            StackTraceElement[] of t
+	 */
+	private void addEnclosed(Throwable t, StackTraceElement[] trace) {
+		for (final Throwable suppressed : getSuppressed(t)) {
+			addEnclosed(suppressed, trace, "Suppressed: ");
+		}
+		final Throwable cause = t.getCause();
+		if (null != cause) {
+			addEnclosed(cause, trace, "Caused by: ");
+		}
+	}
+
+	/**
+	 * @param t
+	 *            Throwable suppressed by or causing the enclosing one
+	 * @param enclosing
+	 *            StackTraceElement[] of the enclosing Throwable
+	 * @param caption
+	 *            String "Suppressed: " or "Caused by: "
+	 */
+	private void addEnclosed(Throwable t, StackTraceElement[] enclosing, String caption) {
+		if (causesLeft_ <= 0) {
+			truncated_ = true;
+			return;
+		}
+		if (null != dejaVu_.put(t, Boolean.TRUE)) {
+			v_.addElement(caption + "[CIRCULAR REFERENCE: " + t.toString() + "]");
+			return;
+		}
+		causesLeft_--;
+		final StackTraceElement[] trace = t.getStackTrace();
+		// frames shared with the enclosing trace are printed as "... n more"
+		int m = trace.length - 1;
+		int n = enclosing.length - 1;
+		while (m >= 0 && n >= 0 && trace[m].equals(enclosing[n])) {
+			m--;
+			n--;
+		}
+		final int framesInCommon = trace.length - 1 - m;
+
+		addHeader(v_, caption + t.toString());
+		addFrames(trace, m + 1);
+		if (framesInCommon != 0) {
+			v_.addElement("... " + framesInCommon + " more");
+		}
+		addEnclosed(t, trace);
+	}
+
+	/**
+	 * Adds the message line(s) for a Throwable, one entry per line as printStackTrace would produce
+	 *
+	 * @param v
+	 *            Vector to add to
+	 * @param header
+	 *            String Throwable.toString()
+	 */
+	private static void addHeader(Vector<String> v, String header) {
+		int start = 0;
+		int end = header.indexOf('\n');
+		while (end > -1) {
+			addTrimmed(v, header.substring(start, end));
+			start = end + 1;
+			end = header.indexOf('\n', start);
+		}
+		addTrimmed(v, header.substring(start));
+	}
+
+	private static void addTrimmed(Vector<String> v, String line) {
+		final String trimmed = line.trim();
+		if (trimmed.length() > 0) {
+			v.addElement(trimmed);
+		}
+	}
+
+	/**
+	 * @param trace
+	 *            StackTraceElement array
+	 * @param count
+	 *            int frames to add from the top of the trace
+	 */
+	private void addFrames(StackTraceElement[] trace, int count) {
+		final StringBuilder sb = sb_;
+		final int limit = (maxDepth_ > 0 && maxDepth_ < count) ? maxDepth_ : count;
+		for (int i = 0; i < limit; i++) {
+			final StackTraceElement ste = trace[i];
+			sb.setLength(0);
+			sb.append("at ").append(ste.getClassName()).append('.').append(ste.getMethodName());
+			if (ste.isNativeMethod()) {
+				sb.append("(Native Method)");
+			} else if (null == ste.getFileName()) {
+				sb.append("(Unknown Source)");
+			} else {
+				sb.append('(').append(ste.getFileName());
+				if (ste.getLineNumber() >= 0) {
+					sb.append(':').append(ste.getLineNumber());
+				}
+				sb.append(')');
+			}
+			v_.addElement(sb.toString());
+		}
+		if (limit < count) {
+			v_.addElement("... " + (count - limit) + " frames not logged");
+		}
+	}
+
+}
@@ -22,10 +22,12 @@ import javax.faces.context.FacesContext;
 import com.ibm.xsp.context.FacesContextEx;
 import com.ibm.xsp.util.TypedUtil;
 import com.paulwithers.openLog.Activator;
+import com.paulwithers.openLog.OpenLogStats;
 import com.paulwithers.openLog.OpenLogUtil;
 
 public class ImplicitObjectFactory implements com.ibm.xsp.el.ImplicitObjectFactory {
-	private final String[][] implicitObjectList = { { "server", ImplicitObject.class.getName() } };
+	public static final String STATS_OBJECT = "openLogStats";
+	private final String[][] implicitObjectList = { { STATS_OBJECT, OpenLogStats.class.getName() } };
 	private final static boolean _debug = Activator._debug;
 
 	public ImplicitObjectFactory() {
@@ -36,7 +38,8 @@ public class ImplicitObjectFactory implements com.ibm.xsp.el.ImplicitObjectFacto
 	@SuppressWarnings("unchecked")
 	public void createImplicitObjects(FacesContextEx paramFacesContextEx) {
 		Map localMap = TypedUtil.getRequestMap(paramFacesContextEx.getExternalContext());
-		localMap.put("server", new ImplicitObject());
+		// shared by the whole server, so nothing is created per request
+		localMap.put(STATS_OBJECT, OpenLogStats.getInstance());
 	}
 
 	public Object getDynamicImplicitObject(FacesContextEx paramFacesContextEx, String paramString) {